@@ -0,0 +1,62 @@
+package nl.arudos.jconfigfile;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-line cost of parsing a configuration line, comparing the current
+ * {@link ConfigLine} scanner with the former regular expression parser
+ * ({@link LegacyConfigLine}) on files from 1k to 1M lines<br>
+ * Every invocation parses the next line of the file, so the score is the
+ * average cost of a single line
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigLineBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public int lines;
+
+	private String[] data;
+	private int index;
+
+	@Setup
+	public void setup() {
+		data = SampleData.lines(lines);
+		index = 0;
+	}
+
+	private String nextLine() {
+		String line = data[index];
+		if (++index == data.length) {
+			index = 0;
+		}
+		return line;
+	}
+
+	@Benchmark
+	public ConfigLine scanner() {
+		return new ConfigLine(nextLine());
+	}
+
+	@Benchmark
+	public LegacyConfigLine legacyRegex() {
+		return new LegacyConfigLine(nextLine());
+	}
+
+}
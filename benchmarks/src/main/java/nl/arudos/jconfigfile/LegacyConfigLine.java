@@ -0,0 +1,63 @@
+package nl.arudos.jconfigfile;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Copy of the regular expression based line parser that was used by
+ * {@link ConfigLine} before the hand-written scanner, kept as the baseline for
+ * {@link ConfigLineBenchmark}
+ */
+final class LegacyConfigLine {
+	String data;
+	String comment;
+	String key;
+	String value;
+
+	LegacyConfigLine(String line) {
+		Pattern commentPattern = Pattern.compile(".*?([;#!]+).*?");
+		Matcher matcher = commentPattern.matcher(line);
+		while (matcher.find()) {
+			if (matcher.start(1) == 0) {
+				setData(null);
+				comment = line;
+				return;
+			}
+
+			String part1 = line.substring(0, matcher.start(1));
+			String part2 = line.substring(matcher.start(1));
+
+			if (part1.trim().isEmpty()) {
+				setData(null);
+				comment = line;
+				return;
+			} else if (part1.endsWith(" ")) {
+				setData(part1.substring(0, part1.length() - 1));
+				comment = " " + part2;
+				return;
+			}
+		}
+
+		setData(line);
+	}
+
+	private void setData(String data) {
+		this.data = data;
+		if (data == null) {
+			key = null;
+			value = null;
+			return;
+		}
+
+		String[] parts = data.split("=", 2);
+		if (parts.length == 1) {
+			key = data.trim();
+			value = null;
+			return;
+		}
+
+		key = parts[0].trim();
+		value = parts[1];
+	}
+
+}
@@ -0,0 +1,72 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of creating a {@link JConfigFile} and of reloading it, for every
+ * encoding that is recognised by its byte order mark, for the same encodings
+ * without a byte order mark (-NOBOM), which are recognised by the position of
+ * the zero bytes, and for a single byte encoding that has to be supplied
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+
+	@Param({ "UTF-8", "UTF-8-BOM", "UTF-16BE", "UTF-16LE", "UTF-32BE", "UTF-32LE", "UTF-16BE-NOBOM",
+			"UTF-16LE-NOBOM", "UTF-32BE-NOBOM", "UTF-32LE-NOBOM", "Cp1252" })
+	public String encoding;
+
+	@Param({ "10000" })
+	public int lines;
+
+	private File file;
+	private String suppliedEncoding;
+	private JConfigFile config;
+
+	@Setup
+	public void setup() throws IOException {
+		boolean bom = !encoding.equals("UTF-8") && !encoding.equals("Cp1252") && !encoding.endsWith("-NOBOM");
+		String name = encoding.replace("-NOBOM", "");
+		Charset charset = Charset.forName(name.equals("UTF-8-BOM") ? "UTF-8" : name);
+		file = SampleData.write(String.join("\n", SampleData.lines(lines)), charset, bom);
+		suppliedEncoding = encoding.equals("Cp1252") ? encoding : null;
+		config = new JConfigFile(file, suppliedEncoding);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public JConfigFile construct() throws IOException {
+		return new JConfigFile(file, suppliedEncoding);
+	}
+
+	@Benchmark
+	public JConfigFile load() throws IOException {
+		config.load();
+		return config;
+	}
+
+}
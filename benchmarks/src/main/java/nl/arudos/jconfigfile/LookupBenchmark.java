@@ -0,0 +1,88 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of looking up a key in files from 100 to 1M keys<br>
+ * Every invocation looks up the next of a fixed random sequence of keys, so
+ * the score is the average cost of a single lookup
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+	private static final int SEQUENCE = 4096;
+
+	@Param({ "100", "10000", "1000000" })
+	public int keys;
+
+	private File file;
+	private JConfigFile config;
+	private String[] sections;
+	private String[] names;
+	private int index;
+
+	@Setup
+	public void setup() throws IOException {
+		file = SampleData.write(SampleData.keys(keys), StandardCharsets.UTF_8, false);
+		config = new JConfigFile(file);
+		Random random = new Random(42);
+		sections = new String[SEQUENCE];
+		names = new String[SEQUENCE];
+		for (int i = 0; i < SEQUENCE; i++) {
+			int key = random.nextInt(keys);
+			sections[i] = "section." + (key / 100);
+			names[i] = "key." + key;
+		}
+		index = 0;
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	private int next() {
+		index = (index + 1) & (SEQUENCE - 1);
+		return index;
+	}
+
+	@Benchmark
+	public String getValue() {
+		int i = next();
+		return config.getValue(sections[i], names[i]);
+	}
+
+	@Benchmark
+	public boolean hasKey() {
+		int i = next();
+		return config.hasKey(sections[i], names[i]);
+	}
+
+	@Benchmark
+	public boolean hasKeyMissing() {
+		int i = next();
+		return config.hasKey(sections[i], "missing");
+	}
+
+}
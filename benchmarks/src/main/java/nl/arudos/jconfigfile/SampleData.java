@@ -0,0 +1,87 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * Generators for the configuration content used by the benchmarks
+ */
+final class SampleData {
+
+	private SampleData() {
+	}
+
+	/**
+	 * Generate a realistic mix of configuration lines: a section header every
+	 * 100 lines, comments, blank lines, plain keys and keys with a trailing
+	 * comment
+	 * 
+	 * @param count
+	 *            Number of lines to generate
+	 * @return array with the generated lines
+	 */
+	static String[] lines(int count) {
+		String[] lines = new String[count];
+		for (int i = 0; i < count; i++) {
+			switch (i % 10) {
+			case 0:
+				lines[i] = (i % 100 == 0) ? "[section." + (i / 100) + "]" : "";
+				break;
+			case 1:
+				lines[i] = "; generated comment line " + i;
+				break;
+			case 5:
+				lines[i] = "feature.flag." + i + " = true ; enabled by default";
+				break;
+			case 7:
+				lines[i] = "url." + i + "=http://host.example.com:8080/path?query=" + i + "#anchor";
+				break;
+			default:
+				lines[i] = "key." + i + "=value " + i;
+				break;
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Generate a file with a number of keys, 100 keys per section: section
+	 * n holds the keys key.(100 * n) up to key.(100 * n + 99)
+	 * 
+	 * @param keys
+	 *            Number of keys to generate
+	 * @return the content of the file
+	 */
+	static String keys(int keys) {
+		StringBuilder sb = new StringBuilder(keys * 24);
+		for (int i = 0; i < keys; i++) {
+			if (i % 100 == 0) {
+				sb.append("[section.").append(i / 100).append("]\n");
+			}
+			sb.append("key.").append(i).append("=value ").append(i).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Write content to a temporary file that is deleted when the JVM exits
+	 * 
+	 * @param content
+	 *            The content of the file
+	 * @param charset
+	 *            The Charset to encode the content with
+	 * @param bom
+	 *            true to start the file with a byte order mark
+	 * @return the file
+	 */
+	static File write(String content, Charset charset, boolean bom) throws IOException {
+		File file = File.createTempFile("benchmark", ".ini");
+		file.deleteOnExit();
+		String text = bom ? (char) 0xFEFF + content : content;
+		Files.write(file.toPath(), text.getBytes(charset));
+		return file;
+	}
+
+}
@@ -0,0 +1,73 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of changing a key, which saves the file on every change, and of
+ * a batch of changes that is saved once
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveBenchmark {
+	private static final int BATCH = 100;
+
+	@Param({ "100", "10000" })
+	public int keys;
+
+	private File file;
+	private JConfigFile config;
+	private long counter;
+
+	@Setup
+	public void setup() throws IOException {
+		file = SampleData.write(SampleData.keys(keys), StandardCharsets.UTF_8, false);
+		config = new JConfigFile(file);
+		counter = 0;
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public boolean setItem() throws IOException {
+		return config.setItem("section.0", "key.0", String.valueOf(counter++));
+	}
+
+	@Benchmark
+	public void setItemBatch() throws IOException {
+		config.beginTransaction();
+		try {
+			for (int i = 0; i < BATCH; i++) {
+				config.setItem("section.0", "key." + i, String.valueOf(counter++));
+			}
+			config.commit();
+		} finally {
+			if (config.inTransaction()) {
+				config.rollback();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of loading a file whose placeholders form a chain of references, where
+ * every key refers to the key before it, optionally with a JavaScript
+ * expression in every value<br>
+ * Without a JavaScript engine on the runtime the expressions resolve to an
+ * error text, which still measures finding and caching them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubstitutionBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int depth;
+
+	@Param({ "false", "true" })
+	public boolean script;
+
+	private File file;
+	private JConfigFile config;
+
+	@Setup
+	public void setup() throws IOException {
+		StringBuilder sb = new StringBuilder("[chain]\nkey.0=base\n");
+		for (int i = 1; i < depth; i++) {
+			sb.append("key.").append(i).append("=${[chain]:key.").append(i - 1).append("}/").append(i);
+			if (script) {
+				sb.append("/${!-").append(i).append(" * 2-!}");
+			}
+			sb.append('\n');
+		}
+		file = SampleData.write(sb.toString(), StandardCharsets.UTF_8, false);
+		config = new JConfigFile(file);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public JConfigFile load() throws IOException {
+		config.load();
+		return config;
+	}
+
+}
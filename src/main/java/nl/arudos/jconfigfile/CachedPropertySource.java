@@ -0,0 +1,94 @@
+package nl.arudos.jconfigfile;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Property source that remembers the values of another source<br>
+ * Every property is looked up once and then kept, also when the source does
+ * not have it, until it expires or the cache is refreshed. Use it for sources
+ * that are slow or that are asked for the same properties on every load.
+ * Instances are thread safe.
+ *
+ * @author Rudo Peters
+ *
+ */
+public final class CachedPropertySource implements PropertySource {
+	private final PropertySource source;
+	private final long ttlNanos;
+	private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Cache the properties of a source until the cache is refreshed
+	 *
+	 * @param source
+	 *            The source to look up the properties in
+	 */
+	public CachedPropertySource(PropertySource source) {
+		this(source, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Cache the properties of a source for a limited time
+	 *
+	 * @param source
+	 *            The source to look up the properties in
+	 * @param timeToLive
+	 *            How long a property is kept, 0 to keep it until the cache is
+	 *            refreshed
+	 * @param unit
+	 *            The unit of the time to live
+	 */
+	public CachedPropertySource(PropertySource source, long timeToLive, TimeUnit unit) {
+		if (source == null) {
+			throw new IllegalArgumentException("Source must not be null");
+		}
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException("Time to live must not be negative");
+		}
+		this.source = source;
+		this.ttlNanos = unit.toNanos(timeToLive);
+	}
+
+	@Override
+	public String getProperty(String name) {
+		Entry entry = cache.get(name);
+		if (entry == null || (ttlNanos > 0 && System.nanoTime() - entry.time > ttlNanos)) {
+			entry = new Entry(source.getProperty(name), System.nanoTime());
+			cache.put(name, entry);
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Forget all properties, they are looked up again when they are asked for
+	 */
+	public void refresh() {
+		cache.clear();
+	}
+
+	/**
+	 * Forget a single property
+	 *
+	 * @param name
+	 *            The name of the property
+	 */
+	public void refresh(String name) {
+		cache.remove(name);
+	}
+
+	/**
+	 * A property value, or null if the source does not have the property, with
+	 * the time it was looked up
+	 */
+	private static final class Entry {
+		private final String value;
+		private final long time;
+
+		Entry(String value, long time) {
+			this.value = value;
+			this.time = time;
+		}
+	}
+
+}
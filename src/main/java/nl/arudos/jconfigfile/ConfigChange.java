@@ -0,0 +1,63 @@
+package nl.arudos.jconfigfile;
+
+/**
+ * A single key that was added, changed or removed
+ * 
+ * @author Rudo Peters
+ *
+ */
+public final class ConfigChange {
+	private final String section;
+	private final String key;
+	private final String oldValue;
+	private final String newValue;
+
+	ConfigChange(String section, String key, String oldValue, String newValue) {
+		this.section = section;
+		this.key = key;
+		this.oldValue = oldValue;
+		this.newValue = newValue;
+	}
+
+	/**
+	 * Get the name of the section
+	 * 
+	 * @return String name of the section (without square brackets)
+	 */
+	public String getSection() {
+		return section;
+	}
+
+	/**
+	 * Get the name of the key
+	 * 
+	 * @return String name of the key
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Get the value before the change
+	 * 
+	 * @return String old value, null if the key was added or had no value
+	 */
+	public String getOldValue() {
+		return oldValue;
+	}
+
+	/**
+	 * Get the value after the change
+	 * 
+	 * @return String new value, null if the key was removed or has no value
+	 */
+	public String getNewValue() {
+		return newValue;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[%s]:%s %s -> %s", section, key, oldValue, newValue);
+	}
+
+}
@@ -0,0 +1,77 @@
+package nl.arudos.jconfigfile;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The keys of a {@link JConfigFile} that were added, changed or removed by a
+ * single load or change
+ * 
+ * @author Rudo Peters
+ *
+ */
+public final class ConfigChangeEvent {
+	private final JConfigFile source;
+	private final List<ConfigChange> added;
+	private final List<ConfigChange> changed;
+	private final List<ConfigChange> removed;
+
+	ConfigChangeEvent(JConfigFile source, List<ConfigChange> added, List<ConfigChange> changed,
+			List<ConfigChange> removed) {
+		this.source = source;
+		this.added = Collections.unmodifiableList(added);
+		this.changed = Collections.unmodifiableList(changed);
+		this.removed = Collections.unmodifiableList(removed);
+	}
+
+	/**
+	 * Get the configuration file that changed
+	 * 
+	 * @return JConfigFile
+	 */
+	public JConfigFile getSource() {
+		return source;
+	}
+
+	/**
+	 * Get the keys that were added
+	 * 
+	 * @return List of added keys
+	 */
+	public List<ConfigChange> getAdded() {
+		return added;
+	}
+
+	/**
+	 * Get the keys with a different value
+	 * 
+	 * @return List of changed keys
+	 */
+	public List<ConfigChange> getChanged() {
+		return changed;
+	}
+
+	/**
+	 * Get the keys that were removed
+	 * 
+	 * @return List of removed keys
+	 */
+	public List<ConfigChange> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Check if no key was added, changed or removed
+	 * 
+	 * @return boolean true if there are no changes
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "added=" + added + ", changed=" + changed + ", removed=" + removed;
+	}
+
+}
@@ -0,0 +1,23 @@
+package nl.arudos.jconfigfile;
+
+/**
+ * Listener for changes of the keys of a {@link JConfigFile}
+ * 
+ * @author Rudo Peters
+ *
+ */
+public interface ConfigChangeListener {
+
+	/**
+	 * Called after keys were added, changed or removed, by a (re)load of the
+	 * file or by a change through the {@link JConfigFile} methods<br>
+	 * The listener is called on the thread that made the change, after the
+	 * change is published. Other changes of the same configuration do not wait
+	 * for it, so the listener can be called by several threads at once.
+	 * 
+	 * @param event
+	 *            The keys that were added, changed or removed
+	 */
+	void configChanged(ConfigChangeEvent event);
+
+}
@@ -0,0 +1,1252 @@
+package nl.arudos.jconfigfile;
+
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The parsed content of a configuration file: the lines, the sections with
+ * their keys and the case-insensitive indexes on both<br>
+ * Once a ConfigData is published by {@link JConfigFile} it is never changed
+ * again, so any number of threads can read it without locking. Changes are
+ * made to a {@link #copy()}, which replaces the published instance when the
+ * change is complete. Lines that change are replaced by new
+ * {@link ConfigLine} objects for the same reason.<br>
+ * <br>
+ * A lazily loaded file only has its section headers parsed. The lines of the
+ * other sections are kept as offsets in the decoded text until a section is
+ * first used; a reader then parses the section into a copy, which replaces the
+ * published instance. Until every section is parsed, the whole decoded text is
+ * retained as a char[] (two bytes per character of the file) together with two
+ * ints per line, in addition to the parsed lines. Both are released by the
+ * copy that parses or removes the last unparsed section.
+ *
+ * @author Rudo Peters
+ *
+ */
+final class ConfigData {
+	static final char BOM_CHAR = 0xFEFF;
+	/**
+	 * Node that a key refers to when its value depends on something outside
+	 * the file, a property or a script, it never is the name of a key
+	 */
+	static final String EXTERNAL = "\u0001";
+	private static final Pattern SECTION_PATTERN = Pattern.compile("^\\s?\\[(.*)\\]\\s?$");
+
+	private final Charset charset;
+	private final boolean bom;
+	private final String separator;
+	private final List<ConfigLine> lines;
+	private final Map<ConfigLine, ArrayList<ConfigLine>> sectionMap;
+	private final Map<String, ConfigLine> sectionIndex;
+	private final Map<String, Map<String, ConfigLine>> keyIndex;
+	private final Map<String, Set<String>> references;
+	private final Map<ConfigLine, int[]> unparsed;
+	private char[] source = null;
+	private int[] offsets = null;
+	private ConfigMetricsListener metrics = null;
+	private PropertySource properties = PropertySource.defaults();
+	private boolean lazyResolution = false;
+	private final Map<ConfigLine, String> resolvedValues;
+
+	ConfigData(Charset charset, boolean bom, String separator) {
+		this.charset = charset;
+		this.bom = bom;
+		this.separator = separator;
+		this.lines = new ArrayList<ConfigLine>();
+		this.sectionMap = new LinkedHashMap<ConfigLine, ArrayList<ConfigLine>>();
+		this.sectionIndex = new HashMap<String, ConfigLine>();
+		this.keyIndex = new HashMap<String, Map<String, ConfigLine>>();
+		this.references = new ConcurrentHashMap<String, Set<String>>();
+		this.unparsed = new HashMap<ConfigLine, int[]>();
+		this.resolvedValues = new ConcurrentHashMap<ConfigLine, String>();
+	}
+
+	private ConfigData(ConfigData source) {
+		this.charset = source.charset;
+		this.bom = source.bom;
+		this.separator = source.separator;
+		this.lines = new ArrayList<ConfigLine>(source.lines);
+		this.sectionMap = new LinkedHashMap<ConfigLine, ArrayList<ConfigLine>>();
+		for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : source.sectionMap.entrySet()) {
+			this.sectionMap.put(entry.getKey(), new ArrayList<ConfigLine>(entry.getValue()));
+		}
+		this.sectionIndex = new HashMap<String, ConfigLine>(source.sectionIndex);
+		this.keyIndex = new HashMap<String, Map<String, ConfigLine>>();
+		for (Map.Entry<String, Map<String, ConfigLine>> entry : source.keyIndex.entrySet()) {
+			this.keyIndex.put(entry.getKey(), new HashMap<String, ConfigLine>(entry.getValue()));
+		}
+		// values that are resolved lazily add references while they are read
+		this.references = new ConcurrentHashMap<String, Set<String>>(source.references);
+		this.resolvedValues = new ConcurrentHashMap<ConfigLine, String>(source.resolvedValues);
+		this.unparsed = new HashMap<ConfigLine, int[]>(source.unparsed);
+		this.source = source.source;
+		this.offsets = source.offsets;
+		this.metrics = source.metrics;
+		this.properties = source.properties;
+		this.lazyResolution = source.lazyResolution;
+	}
+
+	/**
+	 * Get the listener for the metrics of resolving placeholders
+	 *
+	 * @return ConfigMetricsListener or null if no metrics are measured
+	 */
+	ConfigMetricsListener getMetrics() {
+		return metrics;
+	}
+
+	void setMetrics(ConfigMetricsListener metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Get the source of the placeholders that are not a reference to a key
+	 */
+	PropertySource getPropertySource() {
+		return properties;
+	}
+
+	void setPropertySource(PropertySource properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * Create a copy that can be changed without affecting this instance, the
+	 * lines themselves are shared
+	 */
+	ConfigData copy() {
+		return new ConfigData(this);
+	}
+
+	/**
+	 * Fold a section or key name for use in the case-insensitive indexes
+	 */
+	static String fold(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Get the name of a key as used for the references between keys
+	 */
+	static String nodeName(String section, String key) {
+		return fold(section) + '\u0000' + fold(key);
+	}
+
+	/**
+	 * Get the keys that the value of each key refers to
+	 */
+	Map<String, Set<String>> getReferences() {
+		return references;
+	}
+
+	/**
+	 * Record the keys that the value of a key refers to
+	 */
+	void setReferences(String node, Set<String> referenced) {
+		if (referenced.isEmpty()) {
+			references.remove(node);
+		} else {
+			references.put(node, referenced);
+		}
+	}
+
+	Charset getCharset() {
+		return charset;
+	}
+
+	boolean hasBOM() {
+		return bom;
+	}
+
+	String getLineSeparator() {
+		return separator;
+	}
+
+	List<ConfigLine> getLines() {
+		return lines;
+	}
+
+	Map<ConfigLine, ArrayList<ConfigLine>> getSectionMap() {
+		return sectionMap;
+	}
+
+	ConfigLine findSection(String section) {
+		return sectionIndex.get(fold(section));
+	}
+
+	ConfigLine findKey(String section, String key) {
+		Map<String, ConfigLine> keys = keyIndex.get(fold(section));
+		return (keys != null) ? keys.get(fold(key)) : null;
+	}
+
+	/**
+	 * Get the value of a key converted to a type
+	 *
+	 * @return the converted value or null if the key is not present or its
+	 *         value is empty
+	 * @throws IllegalArgumentException
+	 *             if the value can not be converted
+	 */
+	<T> T getConverted(String section, String key, ValueConverter<T> converter) {
+		ConfigLine configLine = findKey(section, key);
+		if (configLine == null || !configLine.hasValue()) {
+			return null;
+		}
+		String value = null;
+		try {
+			if (!resolvesLazily(configLine)) {
+				return configLine.getConverted(converter);
+			}
+			value = resolvedValue(section, configLine).trim();
+			return value.isEmpty() ? null : configLine.getConverted(converter, value);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(String.format("Value '%s' of key '%s' in section '%s' is not a valid %s",
+					(value != null) ? value : configLine.getValue().trim(), key, section, converter.getTypeName()), e);
+		}
+	}
+
+	/**
+	 * Get the value of a key with its placeholders resolved
+	 *
+	 * @return the value or null if the key is not present or has no value
+	 */
+	String getValue(String section, String key) {
+		ConfigLine configLine = findKey(section, key);
+		if (configLine == null) {
+			return null;
+		}
+		return resolvesLazily(configLine) ? resolvedValue(section, configLine) : configLine.getValue();
+	}
+
+	/**
+	 * Check if the placeholders of a line are resolved when it is read
+	 */
+	private boolean resolvesLazily(ConfigLine configLine) {
+		if (!lazyResolution) {
+			return false;
+		}
+		String value = configLine.getValue();
+		return value != null && value.indexOf("${") != -1;
+	}
+
+	/**
+	 * Resolve the placeholders of a line once, the result is kept until a key
+	 * that the line refers to changes<br>
+	 * Readers resolve without a lock. When two threads resolve the same line at
+	 * once, the result that is stored first is kept and returned to both.
+	 */
+	private String resolvedValue(String section, ConfigLine configLine) {
+		String resolved = resolvedValues.get(configLine);
+		if (resolved != null) {
+			return resolved;
+		}
+		return PlaceholderResolver.lazy(this, resolvedValues).resolve(findSection(section).getSection(),
+				configLine);
+	}
+
+	/**
+	 * Check if placeholders are resolved when a value is read instead of when
+	 * the file is loaded
+	 */
+	boolean isLazyResolution() {
+		return lazyResolution;
+	}
+
+	/**
+	 * Forget the resolved values of the lines that refer, directly or through
+	 * other keys, to changed keys
+	 *
+	 * @param nodes
+	 *            The node names of the changed keys
+	 */
+	private void forgetResolved(Collection<String> nodes) {
+		if (resolvedValues.isEmpty()) {
+			return;
+		}
+		Set<String> invalid = findDependents(nodes);
+		invalid.addAll(nodes);
+		for (String node : invalid) {
+			ConfigLine configLine = findNode(node);
+			if (configLine != null) {
+				resolvedValues.remove(configLine);
+			}
+		}
+	}
+
+	/**
+	 * Find the line of a key by its node name
+	 *
+	 * @return the key line or null if the key is not present
+	 */
+	private ConfigLine findNode(String node) {
+		int split = node.indexOf('\u0000');
+		if (split == -1) {
+			return null;
+		}
+		Map<String, ConfigLine> keys = keyIndex.get(node.substring(0, split));
+		return (keys != null) ? keys.get(node.substring(split + 1)) : null;
+	}
+
+	/**
+	 * Get the keys whose value depends, directly or through other keys, on a
+	 * property or a script
+	 *
+	 * @return the node names of the keys
+	 */
+	Set<String> findExternal() {
+		return findDependents(Collections.singleton(EXTERNAL));
+	}
+
+	/**
+	 * Resolve the values that depend on a property or a script, a snapshot
+	 * restores their lines as they were read
+	 */
+	void resolveExternal() {
+		Map<ConfigLine, String> targets = new LinkedHashMap<ConfigLine, String>();
+		for (String node : findExternal()) {
+			ConfigLine configLine = findNode(node);
+			if (configLine != null) {
+				targets.put(configLine, sectionIndex.get(node.substring(0, node.indexOf('\u0000'))).getSection());
+			}
+		}
+		if (!targets.isEmpty()) {
+			new PlaceholderResolver(this, targets).resolve();
+		}
+	}
+
+	List<ConfigLine> getKeyLines(ConfigLine sectionLine) {
+		return sectionMap.get(sectionLine);
+	}
+
+	/**
+	 * Add a section to the index
+	 *
+	 * @return false if a section with the same name is already indexed
+	 */
+	private boolean indexSection(ConfigLine sectionLine) {
+		String section = fold(sectionLine.getSection());
+		if (sectionIndex.containsKey(section)) {
+			return false;
+		}
+		sectionIndex.put(section, sectionLine);
+		keyIndex.put(section, new HashMap<String, ConfigLine>());
+		return true;
+	}
+
+	/**
+	 * Add a key of a section to the index
+	 *
+	 * @return false if the key is already indexed for the section
+	 */
+	private boolean indexKey(ConfigLine sectionLine, ConfigLine keyLine) {
+		Map<String, ConfigLine> keys = keyIndex.get(fold(sectionLine.getSection()));
+		String key = fold(keyLine.getKey());
+		if (keys.containsKey(key)) {
+			return false;
+		}
+		keys.put(key, keyLine);
+		return true;
+	}
+
+	/**
+	 * Get the name of the section that a line starts
+	 *
+	 * @return the section name or null if the line is not a section header
+	 */
+	static String sectionName(ConfigLine configLine) {
+		if (!configLine.hasData()) {
+			return null;
+		}
+		return sectionName(configLine.getData());
+	}
+
+	/**
+	 * Get the name of the section that the data part of a line starts
+	 *
+	 * @return the section name or null if the data is not a section header
+	 */
+	static String sectionName(String data) {
+		Matcher m = SECTION_PATTERN.matcher(data);
+		if (m.matches() && m.groupCount() == 1) {
+			return m.group(1).trim();
+		}
+		return null;
+	}
+
+	/**
+	 * Find the lines of a text, split on CR, LF or CR+LF
+	 *
+	 * @return the start and end offset of every line
+	 */
+	static int[] splitLines(char[] buffer, int start, int end) {
+		final char CR = '\r';
+		final char LF = '\n';
+
+		int[] offsets = new int[64];
+		int count = 0;
+		int i = start;
+		while (true) {
+			while (i < end && buffer[i] != CR && buffer[i] != LF) {
+				i++;
+			}
+			if (count + 2 > offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			}
+			offsets[count++] = start;
+			offsets[count++] = i;
+			if (i == end) {
+				break;
+			}
+			if (buffer[i++] == CR && i < end && buffer[i] == LF) {
+				i++;
+			}
+			if (i == end) {
+				break;
+			}
+			start = i;
+		}
+		return Arrays.copyOf(offsets, count);
+	}
+
+	/**
+	 * Create the content of a file from its lines
+	 *
+	 * @param offsets
+	 *            The start and end offset of every line in the buffer
+	 * @param metrics
+	 *            The listener for the metrics or null
+	 * @param properties
+	 *            The source of the placeholders that are not a reference
+	 * @param lazyResolution
+	 *            true to resolve the placeholders when the values are read
+	 */
+	static ConfigData parse(Charset charset, boolean bom, String separator, char[] buffer, int[] offsets,
+			ConfigMetricsListener metrics, PropertySource properties, boolean lazyResolution) {
+		ConfigData configData = new ConfigData(charset, bom, separator);
+		configData.metrics = metrics;
+		configData.properties = properties;
+		configData.lazyResolution = lazyResolution;
+
+		// add the default section
+		configData.lines.add(new ConfigLine("[]"));
+
+		for (int i = 0; i < offsets.length; i += 2) {
+			configData.lines.add(new ConfigLine(new String(buffer, offsets[i], offsets[i + 1] - offsets[i])));
+		}
+
+		configData.parse();
+		if (!lazyResolution) {
+			new PlaceholderResolver(configData).resolve();
+		}
+		return configData;
+	}
+
+	/**
+	 * Create the content of a changed file from the content it had before<br>
+	 * The sections that are unchanged are taken over with their lines and
+	 * indexes, only the other sections are parsed. Only the placeholders of the
+	 * parsed sections, of the keys that refer to keys of those sections and of
+	 * the keys that depend on a property or a script are resolved again.
+	 *
+	 * @param previous
+	 *            The content before the change
+	 * @param offsets
+	 *            The start and end offset of every line in the buffer
+	 * @param metrics
+	 *            The listener for the metrics or null
+	 * @param properties
+	 *            The source of the placeholders that are not a reference
+	 * @param lazyResolution
+	 *            true to resolve the placeholders when the values are read
+	 */
+	static ConfigData parse(ConfigData previous, char[] buffer, int[] offsets, ConfigMetricsListener metrics,
+			PropertySource properties, boolean lazyResolution) {
+		ConfigData configData = new ConfigData(previous.charset, previous.bom, previous.separator);
+		configData.metrics = metrics;
+		configData.properties = properties;
+		configData.lazyResolution = lazyResolution;
+		Map<String, int[]> oldBlocks = previous.getBlocks();
+		Map<ConfigLine, String> targets = new LinkedHashMap<ConfigLine, String>();
+		Set<String> changedSections = new HashSet<String>();
+		Set<String> changedKeys = new HashSet<String>();
+
+		// the default section is always the first line
+		ConfigLine defaultSection = previous.lines.get(0);
+		configData.lines.add(defaultSection);
+
+		// find the sections in the new text and compare them with the old ones
+		ConfigLine header = defaultSection;
+		int from = 0;
+		for (int i = 0; i <= offsets.length; i += 2) {
+			ConfigLine nextHeader = null;
+			if (i < offsets.length) {
+				nextHeader = headerCandidate(buffer, offsets[i], offsets[i + 1]);
+				if (nextHeader == null) {
+					continue;
+				}
+			}
+			configData.addBlock(previous, oldBlocks, header, buffer, offsets, from, i, targets, changedSections,
+					changedKeys);
+			header = nextHeader;
+			from = i;
+		}
+
+		// the keys of removed sections changed as well
+		for (Map.Entry<String, int[]> entry : oldBlocks.entrySet()) {
+			if (!configData.sectionIndex.containsKey(entry.getKey())) {
+				changedSections.add(entry.getKey());
+				previous.addKeyNames(previous.sectionIndex.get(entry.getKey()), changedKeys);
+			}
+		}
+
+		configData.references.putAll(previous.references);
+		for (Iterator<String> it = configData.references.keySet().iterator(); it.hasNext();) {
+			String node = it.next();
+			if (changedSections.contains(node.substring(0, node.indexOf('\u0000')))) {
+				it.remove();
+			}
+		}
+
+		// properties and scripts may give a different value on every load
+		changedKeys.add(EXTERNAL);
+		configData.invalidateDependents(changedKeys, changedSections, targets);
+		if (!lazyResolution) {
+			new PlaceholderResolver(configData, targets).resolve();
+		}
+		return configData;
+	}
+
+	/**
+	 * Create the content of a file with only its section headers parsed, the
+	 * sections are parsed when they are first used
+	 *
+	 * @param offsets
+	 *            The start and end offset of every line in the buffer
+	 * @param metrics
+	 *            The listener for the metrics of parsing the sections or null
+	 * @param properties
+	 *            The source of the placeholders that are not a reference
+	 */
+	static ConfigData scan(Charset charset, boolean bom, String separator, char[] buffer, int[] offsets,
+			ConfigMetricsListener metrics, PropertySource properties) {
+		ConfigData configData = new ConfigData(charset, bom, separator);
+		configData.metrics = metrics;
+		configData.properties = properties;
+		configData.source = buffer;
+		configData.offsets = offsets;
+
+		ConfigLine header = new ConfigLine("[]");
+		header.setSection("");
+		int from = 0;
+		for (int i = 0; i <= offsets.length; i += 2) {
+			ConfigLine nextHeader = null;
+			if (i < offsets.length) {
+				nextHeader = headerCandidate(buffer, offsets[i], offsets[i + 1]);
+				if (nextHeader == null) {
+					continue;
+				}
+			}
+			if (!configData.indexSection(header)) {
+				throw new IllegalArgumentException(String.format("Duplicate section '%s'", header.getSection()));
+			}
+			configData.lines.add(header);
+			configData.sectionMap.put(header, new ArrayList<ConfigLine>());
+			configData.unparsed.put(header, new int[] { from, i });
+			header = nextHeader;
+			from = i + 2;
+		}
+		return configData;
+	}
+
+	/**
+	 * Check if the keys of a section are parsed
+	 *
+	 * @return true if the section is parsed or does not exist
+	 */
+	boolean isParsed(String section) {
+		if (unparsed.isEmpty()) {
+			return true;
+		}
+		ConfigLine sectionLine = findSection(section);
+		return sectionLine == null || !unparsed.containsKey(sectionLine);
+	}
+
+	/**
+	 * Parse the keys of a section that was not used before and resolve their
+	 * placeholders, sections that they refer to are parsed as well. The time
+	 * is reported as a {@link ConfigMetricsListener.Phase#PARSE}.
+	 */
+	void parseSection(String section) {
+		if (isParsed(section)) {
+			return;
+		}
+		ConfigMetricsListener metrics = this.metrics;
+		long start = (metrics != null) ? System.nanoTime() : 0;
+		Map<ConfigLine, String> targets = new LinkedHashMap<ConfigLine, String>();
+		parseLines(findSection(section), targets);
+		new PlaceholderResolver(this, targets).resolve();
+		if (metrics != null) {
+			metrics.timing(ConfigMetricsListener.Phase.PARSE, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Add a line restored from a snapshot to the end, the lines of a snapshot
+	 * were parsed and checked before
+	 *
+	 * @param sectionLine
+	 *            The header of the section of the line, the line itself for a
+	 *            section header
+	 */
+	void restoreLine(ConfigLine configLine, ConfigLine sectionLine) {
+		lines.add(configLine);
+		if (configLine == sectionLine) {
+			indexSection(configLine);
+			sectionMap.put(configLine, new ArrayList<ConfigLine>());
+		} else if (configLine.hasData()) {
+			indexKey(sectionLine, configLine);
+			sectionMap.get(sectionLine).add(configLine);
+		}
+	}
+
+	/**
+	 * Parse the keys of a section that a placeholder refers to, the keys are
+	 * added to the lines that are being resolved
+	 */
+	void parseReferenced(String section, Map<ConfigLine, String> targets) {
+		if (!isParsed(section)) {
+			parseLines(findSection(section), targets);
+		}
+	}
+
+	/**
+	 * Parse the lines of a section, nothing is changed if the section has
+	 * duplicate keys
+	 */
+	private void parseLines(ConfigLine sectionLine, Map<ConfigLine, String> targets) {
+		int[] range = unparsed.get(sectionLine);
+		List<ConfigLine> body = new ArrayList<ConfigLine>((range[1] - range[0]) / 2);
+		ArrayList<ConfigLine> sectionLines = new ArrayList<ConfigLine>();
+		Map<String, ConfigLine> keys = new HashMap<String, ConfigLine>();
+		for (int i = range[0]; i < range[1]; i += 2) {
+			ConfigLine configLine = new ConfigLine(new String(source, offsets[i], offsets[i + 1] - offsets[i]));
+			body.add(configLine);
+			if (!configLine.hasData()) {
+				continue;
+			}
+			if (keys.put(fold(configLine.getKey()), configLine) != null) {
+				throw new IllegalArgumentException(String.format("Duplicate key '%s' in section '%s'",
+						configLine.getKey(), sectionLine.getSection()));
+			}
+			sectionLines.add(configLine);
+		}
+		unparsed.remove(sectionLine);
+		releaseSource();
+		if (metrics != null) {
+			metrics.count(ConfigMetricsListener.Counter.LINES_PARSED, body.size());
+		}
+		lines.addAll(lines.indexOf(sectionLine) + 1, body);
+		sectionMap.put(sectionLine, sectionLines);
+		keyIndex.put(fold(sectionLine.getSection()), keys);
+		for (ConfigLine configLine : sectionLines) {
+			targets.put(configLine, sectionLine.getSection());
+		}
+	}
+
+	/**
+	 * Parse the sections that are not parsed in one of two versions of the
+	 * content, or that differ between them, so their keys can be compared
+	 */
+	private static void parseDifferent(ConfigData older, ConfigData newer) {
+		boolean parsed;
+		do {
+			parsed = parseDifferentSections(older, newer) | parseDifferentSections(newer, older);
+		} while (parsed);
+	}
+
+	private static boolean parseDifferentSections(ConfigData configData, ConfigData other) {
+		boolean parsed = false;
+		for (ConfigLine sectionLine : new ArrayList<ConfigLine>(configData.unparsed.keySet())) {
+			if (!configData.unparsed.containsKey(sectionLine)) {
+				// parsed as a reference of another section
+				continue;
+			}
+			ConfigLine otherLine = other.findSection(sectionLine.getSection());
+			int[] otherRange = (otherLine != null) ? other.unparsed.get(otherLine) : null;
+			if (otherRange == null || configData.source != other.source
+					|| !Arrays.equals(configData.unparsed.get(sectionLine), otherRange)) {
+				try {
+					configData.parseSection(sectionLine.getSection());
+				} catch (IllegalArgumentException e) {
+					// a section with duplicate keys is compared as a section
+					// without keys
+					configData.unparsed.remove(sectionLine);
+					configData.releaseSource();
+				}
+				parsed = true;
+			}
+		}
+		return parsed;
+	}
+
+	/**
+	 * Release the decoded text once no section refers to it
+	 */
+	private void releaseSource() {
+		if (unparsed.isEmpty()) {
+			source = null;
+			offsets = null;
+		}
+	}
+
+	/**
+	 * Check if a line of the buffer is a section header
+	 *
+	 * @return the parsed header line or null if the line is not a section
+	 *         header
+	 */
+	private static ConfigLine headerCandidate(char[] buffer, int start, int end) {
+		int i = start;
+		while (i < end && buffer[i] <= ' ') {
+			i++;
+		}
+		if (i == end || buffer[i] != '[') {
+			return null;
+		}
+		ConfigLine configLine = new ConfigLine(new String(buffer, start, end - start));
+		String sectionName = sectionName(configLine);
+		if (sectionName == null) {
+			return null;
+		}
+		configLine.setSection(sectionName);
+		return configLine;
+	}
+
+	/**
+	 * Get the position of every section in the lines
+	 *
+	 * @return the first and last (exclusive) line of every section, including
+	 *         the section header, by folded section name
+	 */
+	private Map<String, int[]> getBlocks() {
+		Map<String, int[]> blocks = new HashMap<String, int[]>();
+		int[] block = new int[] { 1, lines.size() };
+		blocks.put(fold(lines.get(0).getSection()), block);
+		for (int i = 1; i < lines.size(); i++) {
+			ConfigLine configLine = lines.get(i);
+			if (sectionMap.containsKey(configLine)) {
+				block[1] = i;
+				block = new int[] { i, lines.size() };
+				blocks.put(fold(configLine.getSection()), block);
+			}
+		}
+		return blocks;
+	}
+
+	/**
+	 * Add a section with its lines, the section is taken over from the
+	 * previous content when none of its lines changed and parsed otherwise
+	 */
+	private void addBlock(ConfigData previous, Map<String, int[]> oldBlocks, ConfigLine header, char[] buffer,
+			int[] offsets, int from, int to, Map<ConfigLine, String> targets, Set<String> changedSections,
+			Set<String> changedKeys) {
+		boolean defaultSection = (header == lines.get(0));
+		String section = header.getSection();
+		if (!defaultSection && sectionIndex.containsKey(fold(section))) {
+			throw new IllegalArgumentException(String.format("Duplicate section '%s'", section));
+		}
+
+		int[] old = oldBlocks.get(fold(section));
+		if (old != null && previous.sameLines(old[0], old[1], buffer, offsets, from, to)) {
+			ConfigLine oldHeader = defaultSection ? header : previous.lines.get(old[0]);
+			lines.addAll(previous.lines.subList(old[0], old[1]));
+			sectionMap.put(oldHeader, previous.sectionMap.get(oldHeader));
+			sectionIndex.put(fold(section), oldHeader);
+			keyIndex.put(fold(section), previous.keyIndex.get(fold(section)));
+			return;
+		}
+
+		changedSections.add(fold(section));
+		if (old != null) {
+			previous.addKeyNames(previous.sectionIndex.get(fold(section)), changedKeys);
+		}
+
+		ArrayList<ConfigLine> sectionLines = new ArrayList<ConfigLine>();
+		int i = from;
+		if (!defaultSection) {
+			lines.add(header);
+			i += 2;
+		}
+		sectionMap.put(header, sectionLines);
+		indexSection(header);
+		for (; i < to; i += 2) {
+			ConfigLine configLine = new ConfigLine(new String(buffer, offsets[i], offsets[i + 1] - offsets[i]));
+			lines.add(configLine);
+			if (!configLine.hasData()) {
+				continue;
+			}
+			if (!indexKey(header, configLine)) {
+				throw new IllegalArgumentException(
+						String.format("Duplicate key '%s' in section '%s'", configLine.getKey(), section));
+			}
+			sectionLines.add(configLine);
+			targets.put(configLine, section);
+		}
+		addKeyNames(header, changedKeys);
+	}
+
+	/**
+	 * Compare lines with a part of a buffer
+	 *
+	 * @return true if the raw text of the lines from and to (exclusive) equals
+	 *         the lines of the buffer
+	 */
+	private boolean sameLines(int from, int to, char[] buffer, int[] offsets, int offsetFrom, int offsetTo) {
+		if ((to - from) * 2 != offsetTo - offsetFrom) {
+			return false;
+		}
+		for (int i = from, j = offsetFrom; i < to; i++, j += 2) {
+			String rawLine = lines.get(i).getRawLine();
+			int length = offsets[j + 1] - offsets[j];
+			if (rawLine.length() != length) {
+				return false;
+			}
+			for (int k = 0; k < length; k++) {
+				if (rawLine.charAt(k) != buffer[offsets[j] + k]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void addKeyNames(ConfigLine sectionLine, Set<String> names) {
+		for (ConfigLine configLine : sectionMap.get(sectionLine)) {
+			names.add(nodeName(sectionLine.getSection(), configLine.getKey()));
+		}
+	}
+
+	/**
+	 * Replace the lines of unchanged sections that refer, directly or through
+	 * other keys, to a changed key by newly parsed lines and add them to the
+	 * lines to resolve
+	 */
+	private void invalidateDependents(Set<String> changedKeys, Set<String> changedSections,
+			Map<ConfigLine, String> targets) {
+		Set<String> copiedSections = new HashSet<String>();
+		for (String node : findDependents(changedKeys)) {
+			int split = node.indexOf('\u0000');
+			String section = node.substring(0, split);
+			ConfigLine sectionLine = sectionIndex.get(section);
+			if (sectionLine == null || changedSections.contains(section)) {
+				continue;
+			}
+			ConfigLine oldLine = keyIndex.get(section).get(node.substring(split + 1));
+			if (oldLine == null) {
+				continue;
+			}
+			if (copiedSections.add(section)) {
+				// the section is shared with the previous content
+				sectionMap.put(sectionLine, new ArrayList<ConfigLine>(sectionMap.get(sectionLine)));
+				keyIndex.put(section, new HashMap<String, ConfigLine>(keyIndex.get(section)));
+			}
+			ConfigLine newLine = new ConfigLine(oldLine.getRawLine());
+			replaceLine(sectionLine, oldLine, newLine);
+			references.remove(node);
+			targets.put(newLine, sectionLine.getSection());
+		}
+	}
+
+	/**
+	 * Find the keys that refer, directly or through other keys, to some keys
+	 *
+	 * @param nodes
+	 *            The node names of the keys
+	 * @return the node names of the keys that refer to them, closest first
+	 */
+	private Set<String> findDependents(Collection<String> nodes) {
+		Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+		for (Map.Entry<String, Set<String>> entry : references.entrySet()) {
+			for (String referenced : entry.getValue()) {
+				List<String> list = dependents.get(referenced);
+				if (list == null) {
+					list = new ArrayList<String>();
+					dependents.put(referenced, list);
+				}
+				list.add(entry.getKey());
+			}
+		}
+
+		Set<String> found = new LinkedHashSet<String>();
+		ArrayDeque<String> queue = new ArrayDeque<String>(nodes);
+		Set<String> visited = new HashSet<String>(nodes);
+		while (!queue.isEmpty()) {
+			List<String> list = dependents.get(queue.poll());
+			if (list == null) {
+				continue;
+			}
+			for (String node : list) {
+				if (visited.add(node)) {
+					queue.add(node);
+					found.add(node);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Build the sections and indexes from the lines
+	 */
+	void parse() {
+		ArrayList<ConfigLine> currentSectionLines = null;
+		ConfigLine currentSection = null;
+		for (ConfigLine configLine : this.lines) {
+			if (!configLine.hasData()) {
+				continue;
+			}
+			String sectionName = sectionName(configLine);
+			if (sectionName != null) {
+				// create the new section
+				configLine.setSection(sectionName);
+				if (!indexSection(configLine)) {
+					throw new IllegalArgumentException(
+							String.format("Duplicate section '%s'", configLine.getSection()));
+				}
+				currentSectionLines = new ArrayList<ConfigLine>();
+				currentSection = configLine;
+				sectionMap.put(currentSection, currentSectionLines);
+			} else {
+				if (!indexKey(currentSection, configLine)) {
+					throw new IllegalArgumentException(String.format("Duplicate key '%s' in section '%s'",
+							configLine.getKey(), currentSection.getSection()));
+				}
+				currentSectionLines.add(configLine);
+			}
+		}
+
+	}
+
+	/**
+	 * Add a new section to the end
+	 *
+	 * @return false if the name is empty or the section already exists
+	 */
+	boolean appendSection(String section) {
+		if (section.isEmpty()) {
+			return false;
+		}
+		if (sectionIndex.containsKey(fold(section))) {
+			return false;
+		}
+		ConfigLine sectionLine = new ConfigLine("[" + section + "]");
+		sectionLine.setSection(section);
+		lines.add(sectionLine);
+		sectionMap.put(sectionLine, new ArrayList<ConfigLine>());
+		indexSection(sectionLine);
+		return true;
+	}
+
+	/**
+	 * Set the value of a key, the key is added after the last key of the
+	 * section when it does not exist yet
+	 *
+	 * @return false if the section does not exist
+	 */
+	boolean setItem(String section, String key, String value) {
+		parseSection(section);
+		forgetResolved(Collections.singleton(nodeName(section, key)));
+		ConfigLine sectionLine = findSection(section);
+		if (sectionLine == null) {
+			return false;
+		}
+
+		String data;
+		ConfigLine configLine = findKey(section, key);
+		if (configLine != null) {
+			String[] parts = configLine.getData().split("=", 2);
+			if (value != null) {
+				data = parts[0] + "=" + value;
+			} else {
+				data = parts[0];
+			}
+			ConfigLine newLine = new ConfigLine(configLine);
+			newLine.setData(data);
+			replaceLine(sectionLine, configLine, newLine);
+			return true;
+		}
+
+		if (value != null) {
+			data = key + "=" + value;
+		} else {
+			data = key;
+		}
+
+		ConfigLine newLine = new ConfigLine(data);
+
+		ArrayList<ConfigLine> sectionLines = sectionMap.get(sectionLine);
+		ConfigLine lastLine = sectionLines.isEmpty() ? sectionLine : sectionLines.get(sectionLines.size() - 1);
+		int j = lines.lastIndexOf(lastLine);
+
+		if (j < lines.size()) {
+			lines.add(j + 1, newLine);
+		} else {
+			lines.add(newLine);
+		}
+
+		sectionLines.add(newLine);
+		indexKey(sectionLine, newLine);
+		return true;
+	}
+
+	/**
+	 * Replace a key line of a section by a new line for the same key
+	 */
+	void replaceLine(ConfigLine sectionLine, ConfigLine oldLine, ConfigLine newLine) {
+		lines.set(lines.indexOf(oldLine), newLine);
+		ArrayList<ConfigLine> sectionLines = sectionMap.get(sectionLine);
+		sectionLines.set(sectionLines.indexOf(oldLine), newLine);
+		keyIndex.get(fold(sectionLine.getSection())).put(fold(newLine.getKey()), newLine);
+	}
+
+	/**
+	 * Remove a key from a section
+	 *
+	 * @return false if the key does not exist
+	 */
+	boolean removeItem(String section, String key) {
+		parseSection(section);
+		forgetResolved(Collections.singleton(nodeName(section, key)));
+		ConfigLine configLine = findKey(section, key);
+		if (configLine == null) {
+			return false;
+		}
+		sectionMap.get(findSection(section)).remove(configLine);
+		keyIndex.get(fold(section)).remove(fold(key));
+		lines.remove(configLine);
+		return true;
+	}
+
+	/**
+	 * Remove a section with all its lines, the default section can not be
+	 * removed
+	 *
+	 * @return false if the section does not exist
+	 */
+	boolean removeSection(String section) {
+		if (section.isEmpty()) {
+			return false;
+		}
+		ConfigLine sectionLine = sectionIndex.get(fold(section));
+		if (sectionLine == null) {
+			return false;
+		}
+		List<String> nodes = new ArrayList<String>();
+		for (ConfigLine configLine : sectionMap.get(sectionLine)) {
+			nodes.add(nodeName(section, configLine.getKey()));
+		}
+		forgetResolved(nodes);
+		sectionIndex.remove(fold(section));
+		keyIndex.remove(fold(section));
+		sectionMap.remove(sectionLine);
+		int[] range = unparsed.remove(sectionLine);
+
+		int start = lines.indexOf(sectionLine);
+		if (range != null) {
+			// the lines of an unparsed section are only in the source
+			List<ConfigLine> body = new ArrayList<ConfigLine>((range[1] - range[0]) / 2);
+			for (int i = range[0]; i < range[1]; i += 2) {
+				body.add(new ConfigLine(new String(source, offsets[i], offsets[i + 1] - offsets[i])));
+			}
+			lines.addAll(start + 1, body);
+			releaseSource();
+		}
+		int end = start + 1;
+		while (end < lines.size() && !sectionMap.containsKey(lines.get(end))) {
+			end++;
+		}
+
+		// the comment lines directly above the next section belong to that
+		// section, remove up to the last key or blank line
+		if (end < lines.size()) {
+			while (end > start + 1 && isCommentOnly(lines.get(end - 1))) {
+				end--;
+			}
+		}
+		lines.subList(start, end).clear();
+		return true;
+	}
+
+	private static boolean isCommentOnly(ConfigLine configLine) {
+		return !configLine.hasData() && configLine.hasComment();
+	}
+
+	/**
+	 * Compare the keys with a newer version of the content
+	 *
+	 * @return the keys that were added, changed or removed in the newer version
+	 */
+	ConfigChangeEvent diff(JConfigFile source, ConfigData newer) {
+		List<ConfigChange> added = new ArrayList<ConfigChange>();
+		List<ConfigChange> changed = new ArrayList<ConfigChange>();
+		List<ConfigChange> removed = new ArrayList<ConfigChange>();
+
+		// sections that are not parsed in either version are unchanged
+		ConfigData older = this;
+		if (!older.unparsed.isEmpty() || !newer.unparsed.isEmpty()) {
+			older = older.copy();
+			newer = newer.copy();
+			parseDifferent(older, newer);
+		}
+
+		for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : newer.sectionMap.entrySet()) {
+			if (newer.unparsed.containsKey(entry.getKey())) {
+				continue;
+			}
+			String section = entry.getKey().getSection();
+			Map<String, ConfigLine> oldKeys = older.keyIndex.get(fold(section));
+			for (ConfigLine configLine : entry.getValue()) {
+				ConfigLine oldLine = (oldKeys != null) ? oldKeys.get(fold(configLine.getKey())) : null;
+				if (oldLine == null) {
+					added.add(new ConfigChange(section, configLine.getKey(), null, configLine.getValue()));
+				} else if (oldLine != configLine && !equal(oldLine.getValue(), configLine.getValue())) {
+					changed.add(new ConfigChange(section, configLine.getKey(), oldLine.getValue(),
+							configLine.getValue()));
+				}
+			}
+		}
+
+		for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : older.sectionMap.entrySet()) {
+			if (older.unparsed.containsKey(entry.getKey())) {
+				continue;
+			}
+			String section = entry.getKey().getSection();
+			Map<String, ConfigLine> newKeys = newer.keyIndex.get(fold(section));
+			for (ConfigLine configLine : entry.getValue()) {
+				if (newKeys == null || !newKeys.containsKey(fold(configLine.getKey()))) {
+					removed.add(new ConfigChange(section, configLine.getKey(), configLine.getValue(), null));
+				}
+			}
+		}
+
+		if (newer.lazyResolution) {
+			List<ConfigChange> changes = new ArrayList<ConfigChange>(added);
+			changes.addAll(changed);
+			changes.addAll(removed);
+			diffResolved(newer, changes, changed);
+		}
+
+		return new ConfigChangeEvent(source, added, changed, removed);
+	}
+
+	/**
+	 * Add the keys whose lazily resolved value changed because a key that they
+	 * refer to, directly or through other keys, was added, changed or removed.
+	 * They are reported with their resolved values. The values that were not
+	 * resolved yet are resolved first, to find the keys they refer to.
+	 *
+	 * @param changes
+	 *            The keys that were added, changed or removed
+	 * @param changed
+	 *            The list of changed keys to add to
+	 */
+	private void diffResolved(ConfigData newer, List<ConfigChange> changes, List<ConfigChange> changed) {
+		Set<String> nodes = new HashSet<String>();
+		for (ConfigChange change : changes) {
+			nodes.add(nodeName(change.getSection(), change.getKey()));
+		}
+		if (nodes.isEmpty()) {
+			return;
+		}
+		for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : sectionMap.entrySet()) {
+			for (ConfigLine configLine : entry.getValue()) {
+				if (resolvesLazily(configLine)) {
+					resolvedValue(entry.getKey().getSection(), configLine);
+				}
+			}
+		}
+		for (String node : findDependents(nodes)) {
+			ConfigLine oldLine = findNode(node);
+			ConfigLine newLine = newer.findNode(node);
+			if (oldLine == null || newLine == null) {
+				continue;
+			}
+			String section = sectionIndex.get(node.substring(0, node.indexOf('\u0000'))).getSection();
+			String oldValue = getValue(section, oldLine.getKey());
+			String newValue = newer.getValue(section, newLine.getKey());
+			if (!equal(oldValue, newValue)) {
+				changed.add(new ConfigChange(section, newLine.getKey(), oldValue, newValue));
+			}
+		}
+	}
+
+	private static boolean equal(String a, String b) {
+		return (a == null) ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Get the text of the file, with the BOM (if any) and a line separator
+	 * after every line
+	 */
+	CharSequence getContent() {
+		// skip the default section, it is not part of the file
+		List<ConfigLine> fileLines = lines.subList(1, lines.size());
+
+		// size the buffer up front, so the content is copied only once
+		int length = bom ? 1 : 0;
+		for (ConfigLine configLine : fileLines) {
+			length += configLine.getLineLength() + separator.length();
+		}
+		for (int[] range : unparsed.values()) {
+			for (int i = range[0]; i < range[1]; i += 2) {
+				length += offsets[i + 1] - offsets[i] + separator.length();
+			}
+		}
+
+		StringBuilder sb = new StringBuilder(length);
+		if (bom) {
+			sb.append(BOM_CHAR);
+		}
+		appendUnparsed(sb, lines.get(0));
+		for (ConfigLine configLine : fileLines) {
+			configLine.appendLine(sb);
+			sb.append(separator);
+			appendUnparsed(sb, configLine);
+		}
+		return sb;
+	}
+
+	/**
+	 * Append the lines of a section that is not parsed, as they were read
+	 */
+	private void appendUnparsed(StringBuilder sb, ConfigLine sectionLine) {
+		if (unparsed.isEmpty()) {
+			return;
+		}
+		int[] range = unparsed.get(sectionLine);
+		if (range == null) {
+			return;
+		}
+		for (int i = range[0]; i < range[1]; i += 2) {
+			sb.append(source, offsets[i], offsets[i + 1] - offsets[i]);
+			sb.append(separator);
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+package nl.arudos.jconfigfile;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background thread that reloads a {@link JConfigFile} when its file changes<br>
+ * The directory of the file is watched with a {@link WatchService}. When that
+ * is not available, or when polling is requested, the modification time and
+ * size of the file are checked periodically instead. Changes are debounced: the
+ * file is reloaded once no further change of the file was seen for the debounce
+ * period, changes of other files in the directory are ignored.<br>
+ * A file that was just saved by the configuration itself is not reloaded. When
+ * the file is polled, a file that still has the state of the last load or save
+ * is not reloaded. A change reported by the WatchService is only skipped when
+ * the file has the state of a save that was not seen by the watcher yet, other
+ * changes are always reloaded, because a rewrite with the same size within the
+ * resolution of the modification time would otherwise be missed.
+ * 
+ * @author Rudo Peters
+ *
+ */
+final class ConfigFileWatcher implements Runnable {
+	private static final Logger LOGGER = Logger.getLogger(ConfigFileWatcher.class.getName());
+
+	private final JConfigFile configFile;
+	private final Path path;
+	private final long debounceMillis;
+	private final Thread thread;
+	private volatile WatchService watchService = null;
+	private volatile boolean running = true;
+
+	ConfigFileWatcher(JConfigFile configFile, Path path, long debounceMillis, boolean polling) {
+		this.configFile = configFile;
+		this.path = path.toAbsolutePath();
+		this.debounceMillis = debounceMillis;
+		if (!polling) {
+			try {
+				this.watchService = this.path.getFileSystem().newWatchService();
+				this.path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+			} catch (IOException | UnsupportedOperationException e) {
+				closeWatchService();
+			}
+		}
+		this.thread = new Thread(this, "JConfigFile watcher " + this.path.getFileName());
+		this.thread.setDaemon(true);
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	void stop() {
+		running = false;
+		thread.interrupt();
+		closeWatchService();
+	}
+
+	/**
+	 * Check if the file system notifies the watcher of changes
+	 * 
+	 * @return false if the file is polled
+	 */
+	boolean isNotified() {
+		return watchService != null;
+	}
+
+	private void closeWatchService() {
+		WatchService service = this.watchService;
+		if (service != null) {
+			this.watchService = null;
+			try {
+				service.close();
+			} catch (IOException e) {
+				// nothing left to clean up
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		// stop() clears the field from another thread, the closed service then
+		// ends the loop
+		WatchService service = this.watchService;
+		while (running) {
+			try {
+				if (service != null) {
+					if (drainEvents(service.take())) {
+						debounce(service);
+						reloadUnlessSaved();
+					}
+				} else if (waitForPoll()) {
+					debounce(null);
+					reloadIfChanged();
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				break;
+			}
+		}
+	}
+
+	private boolean waitForPoll() throws InterruptedException {
+		Thread.sleep(debounceMillis);
+		return !equal(FileState.read(path), configFile.getFileState());
+	}
+
+	/**
+	 * Wait until the file did not change for the debounce period
+	 *
+	 * @param service
+	 *            The service that reports the changes, or null if the file is
+	 *            polled
+	 */
+	private void debounce(WatchService service) throws InterruptedException {
+		if (service != null) {
+			// the period restarts at the last event of the file, not at events
+			// of other files in the directory
+			long period = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+			long deadline = System.nanoTime() + period;
+			long remaining;
+			while ((remaining = deadline - System.nanoTime()) > 0) {
+				WatchKey key = service.poll(remaining, TimeUnit.NANOSECONDS);
+				if (key != null && drainEvents(key)) {
+					deadline = System.nanoTime() + period;
+				}
+			}
+		} else {
+			FileState previous = FileState.read(path);
+			while (true) {
+				Thread.sleep(debounceMillis);
+				FileState state = FileState.read(path);
+				if (equal(state, previous)) {
+					break;
+				}
+				previous = state;
+			}
+		}
+	}
+
+	/**
+	 * Remove the events from a key and reset it
+	 * 
+	 * @return true if one of the events may concern the watched file
+	 */
+	private boolean drainEvents(WatchKey key) {
+		boolean relevant = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || path.getFileName().equals(event.context())) {
+				relevant = true;
+			}
+		}
+		key.reset();
+		return relevant;
+	}
+
+	private void reloadIfChanged() {
+		FileState state = FileState.read(path);
+		if (state == null || state.equals(configFile.getFileState())) {
+			return;
+		}
+		reload();
+	}
+
+	/**
+	 * Reload the file, unless the change was made by a save of the
+	 * configuration itself
+	 */
+	private void reloadUnlessSaved() {
+		FileState saved = configFile.takeSavedState();
+		if (saved != null && saved.equals(FileState.read(path))) {
+			return;
+		}
+		reload();
+	}
+
+	private void reload() {
+		if (!Files.exists(path)) {
+			// the file was removed, or is being replaced
+			return;
+		}
+		try {
+			configFile.load();
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Reload of " + path + " failed, keeping the current configuration", e);
+		}
+	}
+
+	private static boolean equal(FileState a, FileState b) {
+		return (a == null) ? b == null : a.equals(b);
+	}
+
+	/**
+	 * The identity, modification time and size of a file
+	 */
+	static final class FileState {
+		private final Object fileKey;
+		private final long modified;
+		private final long size;
+
+		private FileState(BasicFileAttributes attributes) {
+			this.fileKey = attributes.fileKey();
+			this.modified = attributes.lastModifiedTime().toMillis();
+			this.size = attributes.size();
+		}
+
+		/**
+		 * Get the current state of a file
+		 * 
+		 * @return FileState or null if the file does not exist or can not be
+		 *         read
+		 */
+		static FileState read(Path path) {
+			try {
+				return new FileState(Files.readAttributes(path, BasicFileAttributes.class));
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FileState)) {
+				return false;
+			}
+			FileState other = (FileState) obj;
+			return modified == other.modified && size == other.size
+					&& (fileKey == null ? other.fileKey == null : fileKey.equals(other.fileKey));
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (modified ^ (modified >>> 32)) * 31 + (int) size;
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package nl.arudos.jconfigfile;
+
+/**
+ * Receives the content of a configuration file from a {@link ConfigReader},
+ * in the order of the file<br>
+ * Every file starts with the default section, which has an empty name. All
+ * methods do nothing by default, so a handler only implements the events it
+ * needs.
+ *
+ * @author Rudo Peters
+ *
+ */
+public interface ConfigHandler {
+
+	/**
+	 * Called at the start of a section
+	 *
+	 * @param section
+	 *            Name of the section (without square brackets)
+	 */
+	default void startSection(String section) {
+	}
+
+	/**
+	 * Called for every key, values are passed as they are in the file,
+	 * placeholders are not resolved
+	 *
+	 * @param section
+	 *            Name of the section (without square brackets)
+	 * @param key
+	 *            Name of the key
+	 * @param value
+	 *            Value of the key or null if the line has no '='
+	 */
+	default void keyValue(String section, String key, String value) {
+	}
+
+	/**
+	 * Called for every comment, both for comment lines and for comments after
+	 * a key or section
+	 *
+	 * @param section
+	 *            Name of the section (without square brackets)
+	 * @param comment
+	 *            The comment, including the comment character
+	 */
+	default void comment(String section, String comment) {
+	}
+
+	/**
+	 * Called at the end of a section
+	 *
+	 * @param section
+	 *            Name of the section (without square brackets)
+	 */
+	default void endSection(String section) {
+	}
+
+}
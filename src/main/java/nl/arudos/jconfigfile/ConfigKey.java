@@ -0,0 +1,115 @@
+package nl.arudos.jconfigfile;
+
+/**
+ * Handle to the value of a single key, for keys that are read very often<br>
+ * The section and key names are validated and looked up once. The handle keeps
+ * the value of the snapshot it was last read from, a read only looks up the
+ * key again after a load or a change replaced that snapshot. Handles stay
+ * valid across loads and changes, also when the key is removed and added
+ * again.
+ *
+ * @author Rudo Peters
+ *
+ */
+public final class ConfigKey<T> {
+	private final JConfigFile configFile;
+	private final String section;
+	private final String key;
+	private final ValueConverter<T> converter;
+	private final T defaultValue;
+	private volatile Binding<T> binding = null;
+
+	/**
+	 * @param converter
+	 *            The converter for the value, null to use the value as it is
+	 */
+	ConfigKey(JConfigFile configFile, String section, String key, ValueConverter<T> converter, T defaultValue) {
+		this.configFile = configFile;
+		this.section = section;
+		this.key = key;
+		this.converter = converter;
+		this.defaultValue = defaultValue;
+	}
+
+	/**
+	 * Get the name of the section
+	 *
+	 * @return String name of the section (without square brackets)
+	 */
+	public String getSection() {
+		return section;
+	}
+
+	/**
+	 * Get the name of the key
+	 *
+	 * @return String name of the key
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Get the current value of the key
+	 *
+	 * @return the value of the key or the default value if the key is not
+	 *         present or, for converted values, its value is empty
+	 * @throws IllegalArgumentException
+	 *             if the value can not be converted
+	 */
+	public T get() {
+		ConfigData snapshot = configFile.current();
+		Binding<T> last = this.binding;
+		ConfigMetricsListener metrics = configFile.getMetricsListener();
+		if (metrics != null) {
+			metrics.count(ConfigMetricsListener.Counter.LOOKUPS, 1);
+		}
+		if (last != null && last.snapshot == snapshot) {
+			if (metrics != null) {
+				metrics.count(ConfigMetricsListener.Counter.KEY_CACHE_HITS, 1);
+			}
+			return last.value;
+		}
+		if (metrics != null) {
+			metrics.count(ConfigMetricsListener.Counter.KEY_CACHE_MISSES, 1);
+		}
+		snapshot = configFile.current(section);
+		Binding<T> bound = new Binding<T>(snapshot, lookup(snapshot));
+		if (!configFile.inTransaction()) {
+			// the changes of a transaction are made in place, so they are
+			// looked up on every read
+			this.binding = bound;
+		}
+		return bound.value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T lookup(ConfigData snapshot) {
+		T value;
+		if (converter == null) {
+			value = (T) snapshot.getValue(section, key);
+		} else {
+			value = snapshot.getConverted(section, key, converter);
+		}
+		return (value != null) ? value : defaultValue;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + section + "]:" + key;
+	}
+
+	/**
+	 * The value of the key in a snapshot
+	 */
+	private static final class Binding<T> {
+		private final ConfigData snapshot;
+		private final T value;
+
+		Binding(ConfigData snapshot, T value) {
+			this.snapshot = snapshot;
+			this.value = value;
+		}
+	}
+
+}
@@ -0,0 +1,186 @@
+package nl.arudos.jconfigfile;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics listener that adds up the timings and counters of one or more
+ * configuration files<br>
+ * The totals can be read directly or through JMX after {@link #register} was
+ * called. Instances are thread safe.
+ *
+ * @author Rudo Peters
+ *
+ */
+public final class ConfigMetrics implements ConfigMetricsListener, ConfigMetricsMBean {
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private final Map<Phase, LongAdder> timings = new EnumMap<Phase, LongAdder>(Phase.class);
+	private final Map<Counter, LongAdder> counters = new EnumMap<Counter, LongAdder>(Counter.class);
+
+	public ConfigMetrics() {
+		for (Phase phase : Phase.values()) {
+			timings.put(phase, new LongAdder());
+		}
+		for (Counter counter : Counter.values()) {
+			counters.put(counter, new LongAdder());
+		}
+	}
+
+	@Override
+	public void timing(Phase phase, long nanos) {
+		timings.get(phase).add(nanos);
+	}
+
+	@Override
+	public void count(Counter counter, long amount) {
+		counters.get(counter).add(amount);
+	}
+
+	/**
+	 * Get the total time of a phase
+	 *
+	 * @return long time in nanoseconds
+	 */
+	public long getNanos(Phase phase) {
+		return timings.get(phase).sum();
+	}
+
+	/**
+	 * Get the total of a counter
+	 *
+	 * @return long number of events
+	 */
+	public long getCount(Counter counter) {
+		return counters.get(counter).sum();
+	}
+
+	private double millis(Phase phase) {
+		return getNanos(phase) / NANOS_PER_MILLI;
+	}
+
+	private double rate(long hits, long misses) {
+		return (hits + misses == 0) ? 0.0 : (double) hits / (hits + misses);
+	}
+
+	@Override
+	public double getDetectCharsetMillis() {
+		return millis(Phase.DETECT_CHARSET);
+	}
+
+	@Override
+	public double getReadMillis() {
+		return millis(Phase.READ);
+	}
+
+	@Override
+	public double getParseMillis() {
+		return millis(Phase.PARSE);
+	}
+
+	@Override
+	public double getResolveMillis() {
+		return millis(Phase.RESOLVE);
+	}
+
+	@Override
+	public double getScriptMillis() {
+		return millis(Phase.SCRIPT);
+	}
+
+	@Override
+	public double getSaveMillis() {
+		return millis(Phase.SAVE);
+	}
+
+	@Override
+	public long getLinesParsed() {
+		return getCount(Counter.LINES_PARSED);
+	}
+
+	@Override
+	public long getSubstitutionPasses() {
+		return getCount(Counter.SUBSTITUTION_PASSES);
+	}
+
+	@Override
+	public long getScriptEvaluations() {
+		return getCount(Counter.SCRIPT_EVALUATIONS);
+	}
+
+	@Override
+	public double getScriptCacheHitRate() {
+		return rate(getCount(Counter.SCRIPT_CACHE_HITS), getCount(Counter.SCRIPT_EVALUATIONS));
+	}
+
+	@Override
+	public long getLookups() {
+		return getCount(Counter.LOOKUPS);
+	}
+
+	@Override
+	public double getKeyCacheHitRate() {
+		return rate(getCount(Counter.KEY_CACHE_HITS), getCount(Counter.KEY_CACHE_MISSES));
+	}
+
+	@Override
+	public long getSaves() {
+		return getCount(Counter.SAVES);
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return getCount(Counter.BYTES_WRITTEN);
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder adder : timings.values()) {
+			adder.reset();
+		}
+		for (LongAdder adder : counters.values()) {
+			adder.reset();
+		}
+	}
+
+	/**
+	 * Register the metrics as an MBean in the platform MBean server
+	 *
+	 * @param name
+	 *            The name of the metrics, for example the name of the file
+	 * @return ObjectName the name the MBean is registered with
+	 * @throws IllegalArgumentException
+	 *             if the MBean can not be registered, for example because the
+	 *             name is in use
+	 */
+	public ObjectName register(String name) {
+		try {
+			ObjectName objectName = new ObjectName(
+					"nl.arudos.jconfigfile:type=ConfigMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new IllegalArgumentException(String.format("Metrics '%s' can not be registered", name), e);
+		}
+	}
+
+	/**
+	 * Remove an MBean registered by {@link #register}
+	 *
+	 * @param objectName
+	 *            The name the MBean was registered with
+	 */
+	public static void unregister(ObjectName objectName) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			// not registered (any more)
+		}
+	}
+
+}
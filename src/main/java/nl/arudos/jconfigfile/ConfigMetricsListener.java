@@ -0,0 +1,86 @@
+package nl.arudos.jconfigfile;
+
+/**
+ * Receives the timings and counters of the work done by a {@link JConfigFile}
+ * <br>
+ * All methods do nothing by default. A file without a listener does not
+ * measure anything, so a listener only costs time while it is registered. The
+ * methods are called on the thread that does the work, often while other
+ * changes of the same configuration wait, so they should return quickly.
+ *
+ * @author Rudo Peters
+ *
+ */
+public interface ConfigMetricsListener {
+
+	/**
+	 * The measured phases of loading and saving a file
+	 */
+	enum Phase {
+		/** Finding the Charset of the file */
+		DETECT_CHARSET,
+		/** Reading the bytes of the file */
+		READ,
+		/**
+		 * Decoding and parsing the text or reading a snapshot, and parsing a
+		 * lazily loaded section when it is first used, including RESOLVE
+		 */
+		PARSE,
+		/** Resolving placeholders, including SCRIPT */
+		RESOLVE,
+		/** Evaluating a JavaScript expression */
+		SCRIPT,
+		/** Encoding and writing the file */
+		SAVE
+	}
+
+	/**
+	 * The counted events
+	 */
+	enum Counter {
+		/** Lines parsed by a load */
+		LINES_PARSED,
+		/** Runs over the placeholders of a file or of some of its sections */
+		SUBSTITUTION_PASSES,
+		/** JavaScript expressions evaluated */
+		SCRIPT_EVALUATIONS,
+		/** JavaScript expressions whose earlier result was reused */
+		SCRIPT_CACHE_HITS,
+		/**
+		 * Values read through the getters and {@link ConfigKey}s, and keys
+		 * and sections looked up by hasKey, hasSection and getKeys
+		 */
+		LOOKUPS,
+		/** {@link ConfigKey} reads answered from the value they kept */
+		KEY_CACHE_HITS,
+		/** {@link ConfigKey} reads that looked the key up again */
+		KEY_CACHE_MISSES,
+		/** Saves of the file */
+		SAVES,
+		/** Bytes written by the saves */
+		BYTES_WRITTEN
+	}
+
+	/**
+	 * Called when a phase ends
+	 *
+	 * @param phase
+	 *            The phase
+	 * @param nanos
+	 *            The time the phase took in nanoseconds
+	 */
+	default void timing(Phase phase, long nanos) {
+	}
+
+	/**
+	 * Called when events are counted
+	 *
+	 * @param counter
+	 *            The counter
+	 * @param amount
+	 *            The number of events
+	 */
+	default void count(Counter counter, long amount) {
+	}
+
+}
@@ -0,0 +1,45 @@
+package nl.arudos.jconfigfile;
+
+/**
+ * JMX management interface of {@link ConfigMetrics}, times are in
+ * milliseconds
+ *
+ * @author Rudo Peters
+ *
+ */
+public interface ConfigMetricsMBean {
+
+	double getDetectCharsetMillis();
+
+	double getReadMillis();
+
+	double getParseMillis();
+
+	double getResolveMillis();
+
+	double getScriptMillis();
+
+	double getSaveMillis();
+
+	long getLinesParsed();
+
+	long getSubstitutionPasses();
+
+	long getScriptEvaluations();
+
+	double getScriptCacheHitRate();
+
+	long getLookups();
+
+	double getKeyCacheHitRate();
+
+	long getSaves();
+
+	long getBytesWritten();
+
+	/**
+	 * Set all timings and counters back to zero
+	 */
+	void reset();
+
+}
@@ -0,0 +1,184 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a configuration file line by line and passes its sections, keys and
+ * comments to a {@link ConfigHandler}<br>
+ * Only a fixed size buffer and the current line are kept in memory, so files of
+ * any size can be read. The Charset and BOM are detected and the lines are
+ * split and parsed in the same way as by {@link JConfigFile}. Because nothing
+ * is kept, placeholders are not resolved and duplicate sections and keys are
+ * not detected.
+ *
+ * @author Rudo Peters
+ *
+ */
+public final class ConfigReader {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private final Charset suppliedCharset;
+
+	/**
+	 * Create a reader for a file, the character encoding is detected
+	 *
+	 * @param file
+	 *            The configuration File
+	 */
+	public ConfigReader(File file) {
+		this(file, null);
+	}
+
+	/**
+	 * Create a reader for a file with the supplied character encoding
+	 *
+	 * @param file
+	 *            The configuration File
+	 * @param encoding
+	 *            The file encoding, for example Cp1252 (a.k.a ANSI), UTF-8,
+	 *            etc, or null to attempt auto detection of the encoding
+	 */
+	public ConfigReader(File file, String encoding) {
+		if (file == null) {
+			throw new IllegalArgumentException("File must not be null");
+		}
+		this.file = file;
+		this.suppliedCharset = (encoding != null) ? Charset.forName(encoding) : null;
+	}
+
+	/**
+	 * Read the file and pass its content to a handler
+	 *
+	 * @param handler
+	 *            The handler for the sections, keys and comments
+	 * @throws IOException
+	 */
+	public void read(ConfigHandler handler) throws IOException {
+		if (handler == null) {
+			throw new IllegalArgumentException("Handler must not be null");
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+			boolean eof = fill(channel, bytes);
+			Charset charset = JConfigFile.detectCharset(bytes, suppliedCharset);
+			CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+			LineParser parser = new LineParser(handler);
+			CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+			while (true) {
+				CoderResult result = decoder.decode(bytes, chars, eof);
+				chars.flip();
+				parser.append(chars);
+				chars.clear();
+				if (result.isOverflow()) {
+					continue;
+				}
+				if (eof) {
+					break;
+				}
+				bytes.compact();
+				eof = fill(channel, bytes);
+			}
+			decoder.flush(chars);
+			chars.flip();
+			parser.append(chars);
+			parser.finish();
+		}
+	}
+
+	/**
+	 * Read bytes until the buffer is full or the end of the file is reached
+	 *
+	 * @return true if the end of the file was reached
+	 */
+	private static boolean fill(FileChannel channel, ByteBuffer bytes) throws IOException {
+		boolean eof = false;
+		while (bytes.hasRemaining()) {
+			if (channel.read(bytes) == -1) {
+				eof = true;
+				break;
+			}
+		}
+		bytes.flip();
+		return eof;
+	}
+
+	/**
+	 * Splits the decoded characters into lines and passes the parsed lines to
+	 * the handler
+	 */
+	private static final class LineParser {
+		private final ConfigHandler handler;
+		private final StringBuilder line = new StringBuilder();
+		private String section = "";
+		private boolean first = true;
+		private boolean afterCR = false;
+
+		LineParser(ConfigHandler handler) {
+			this.handler = handler;
+			handler.startSection(section);
+		}
+
+		void append(CharBuffer chars) {
+			while (chars.hasRemaining()) {
+				char c = chars.get();
+				if (first) {
+					first = false;
+					if (c == ConfigData.BOM_CHAR) {
+						continue;
+					}
+				}
+				if (c == '\r') {
+					endLine();
+					afterCR = true;
+				} else if (c == '\n') {
+					if (!afterCR) {
+						endLine();
+					}
+					afterCR = false;
+				} else {
+					line.append(c);
+					afterCR = false;
+				}
+			}
+		}
+
+		void finish() {
+			endLine();
+			handler.endSection(section);
+		}
+
+		private void endLine() {
+			if (line.length() == 0) {
+				return;
+			}
+			ConfigLine configLine = new ConfigLine(line.toString());
+			line.setLength(0);
+			if (configLine.hasData()) {
+				String sectionName = ConfigData.sectionName(configLine);
+				if (sectionName != null) {
+					handler.endSection(section);
+					section = sectionName;
+					handler.startSection(section);
+				} else {
+					handler.keyValue(section, configLine.getKey(), configLine.getValue());
+				}
+			}
+			if (configLine.hasComment()) {
+				handler.comment(section, configLine.getComment());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,214 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A set of configuration files that are loaded in parallel and can refer to
+ * each other<br>
+ * Every file is read, parsed and resolved on its own thread, so loading takes
+ * about as long as the slowest file. A value can refer to a key of another file
+ * of the registry with ${name:[section]:key}, where name is the name the file
+ * was registered with. These placeholders are resolved once all files are
+ * loaded, and again whenever the referring file is loaded. Changes to the
+ * referenced file are not passed on to the files that refer to it until they
+ * are loaded again.<br>
+ * <br>
+ * Instances are thread safe.
+ *
+ * @author Rudo Peters
+ *
+ */
+public final class ConfigRegistry {
+	private final Map<String, JConfigFile> files;
+
+	private ConfigRegistry(Map<String, JConfigFile> files) {
+		this.files = files;
+	}
+
+	/**
+	 * Load a set of files in parallel, the character encodings are detected<br>
+	 * The files are loaded on virtual threads if the Java runtime has them,
+	 * otherwise on a thread pool that is shut down afterwards.
+	 *
+	 * @param files
+	 *            The configuration files by their name
+	 * @return ConfigRegistry with the loaded files
+	 * @throws IOException
+	 *             if one of the files can not be read
+	 */
+	public static ConfigRegistry load(Map<String, File> files) throws IOException {
+		ExecutorService executor = newExecutor(files.size());
+		try {
+			return load(files, null, executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Load a set of files in parallel on the supplied executor
+	 *
+	 * @param files
+	 *            The configuration files by their name
+	 * @param encoding
+	 *            The file encoding, for example Cp1252 (a.k.a ANSI), UTF-8,
+	 *            etc, or null to attempt auto detection of the encoding
+	 * @param executor
+	 *            The executor that loads the files
+	 * @return ConfigRegistry with the loaded files
+	 * @throws IOException
+	 *             if one of the files can not be read
+	 */
+	public static ConfigRegistry load(Map<String, File> files, final String encoding, Executor executor)
+			throws IOException {
+		if (files == null) {
+			throw new IllegalArgumentException("Files must not be null");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor must not be null");
+		}
+		Map<String, FutureTask<JConfigFile>> tasks = new LinkedHashMap<String, FutureTask<JConfigFile>>();
+		for (Map.Entry<String, File> entry : files.entrySet()) {
+			final String name = validateName(entry.getKey());
+			final File file = entry.getValue();
+			if (file == null) {
+				throw new IllegalArgumentException(String.format("File of '%s' must not be null", name));
+			}
+			tasks.put(name, new FutureTask<JConfigFile>(() -> new JConfigFile(file, encoding)));
+		}
+		for (FutureTask<JConfigFile> task : tasks.values()) {
+			executor.execute(task);
+		}
+
+		Map<String, JConfigFile> loaded = new LinkedHashMap<String, JConfigFile>();
+		for (Map.Entry<String, FutureTask<JConfigFile>> entry : tasks.entrySet()) {
+			loaded.put(entry.getKey(), await(entry.getValue()));
+		}
+
+		ConfigRegistry registry = new ConfigRegistry(Collections.unmodifiableMap(loaded));
+		for (JConfigFile configFile : loaded.values()) {
+			configFile.setRegistry(registry);
+		}
+		// a reference can lead to a value of a third file, every pass
+		// resolves one more step of such a chain
+		for (int pass = 0; pass < loaded.size(); pass++) {
+			boolean changed = false;
+			for (JConfigFile configFile : loaded.values()) {
+				changed |= configFile.resolveRegistryReferences();
+			}
+			if (!changed) {
+				break;
+			}
+		}
+		return registry;
+	}
+
+	private static String validateName(String name) {
+		if (name == null || name.trim().isEmpty()) {
+			throw new IllegalArgumentException("Name must not be empty");
+		}
+		if (name.indexOf(':') != -1 || name.indexOf('[') != -1) {
+			throw new IllegalArgumentException(String.format("Name '%s' must not contain ':' or '['", name));
+		}
+		return name.trim();
+	}
+
+	private static JConfigFile await(FutureTask<JConfigFile> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Create an executor with a virtual thread per task if the runtime supports
+	 * it, otherwise a fixed thread pool
+	 */
+	private static ExecutorService newExecutor(int tasks) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			// the file loads mostly wait for I/O, so more threads than
+			// processors are used
+			int threads = Math.min(Math.max(tasks, 1), Runtime.getRuntime().availableProcessors() * 2);
+			return Executors.newFixedThreadPool(threads);
+		}
+	}
+
+	/**
+	 * Resolve the placeholders of a file that refer to other files
+	 *
+	 * @param configFile
+	 *            The file the content belongs to
+	 * @param configData
+	 *            The content, which is not published yet, its changed lines
+	 *            are replaced so the lines it shares with a published snapshot
+	 *            are not changed
+	 * @return true if a value was changed
+	 */
+	boolean resolve(JConfigFile configFile, ConfigData configData) {
+		Map<String, ConfigData> snapshots = new HashMap<String, ConfigData>();
+		for (Map.Entry<String, JConfigFile> entry : files.entrySet()) {
+			JConfigFile other = entry.getValue();
+			snapshots.put(entry.getKey(), (other == configFile) ? configData : other.current());
+		}
+		return new PlaceholderResolver(configData, null, snapshots).resolve();
+	}
+
+	/**
+	 * Get the names of the files
+	 *
+	 * @return Set of names, in the order the files were registered
+	 */
+	public Set<String> getNames() {
+		return files.keySet();
+	}
+
+	/**
+	 * Get a file by its name
+	 *
+	 * @param name
+	 *            The name the file was registered with
+	 * @return JConfigFile or null if there is no file with that name
+	 */
+	public JConfigFile get(String name) {
+		return files.get(name);
+	}
+
+	/**
+	 * Get all files
+	 *
+	 * @return List of files, in the order they were registered
+	 */
+	public List<JConfigFile> getFiles() {
+		return new ArrayList<JConfigFile>(files.values());
+	}
+
+}
@@ -0,0 +1,280 @@
+package nl.arudos.jconfigfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a parsed and resolved configuration file<br>
+ * A snapshot holds the lines of the file with their resolved values, so a
+ * process that loads it does not decode, parse or resolve the text again. It
+ * records the size and CRC-32 checksum of the source file and is only used
+ * while the source file is unchanged.<br>
+ * <br>
+ * The checksum does not cover what a value takes from outside the file. Values
+ * that depend, directly or through other keys, on an environment variable, a
+ * system property, another {@link PropertySource} or a script are therefore
+ * stored as they were read and resolved again on every load. Only the values
+ * that depend on the file alone are loaded resolved.<br>
+ * <br>
+ * Format, all numbers big-endian:
+ * <ul>
+ * <li>magic "JCFS" and format version</li>
+ * <li>size and CRC-32 of the source file</li>
+ * <li>Charset name, BOM flag and line separator</li>
+ * <li>string table: every distinct line, value and section name once</li>
+ * <li>lines: per line the string number of the line as it was read, of the
+ * resolved value if it differs and depends on the file alone and of the
+ * section name for section headers</li>
+ * <li>references between keys, used by incremental reloads</li>
+ * <li>CRC-32 of everything before it</li>
+ * </ul>
+ * Strings are stored as their length and UTF-8 bytes, a string number of -1
+ * stands for no string.
+ *
+ * @author Rudo Peters
+ *
+ */
+final class ConfigSnapshot {
+	private static final int MAGIC = 0x4A434653;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 24;
+
+	private ConfigSnapshot() {
+	}
+
+	/**
+	 * Get the snapshot file of a configuration file
+	 */
+	static File snapshotFile(File file) {
+		return new File(file.getPath() + ".snapshot");
+	}
+
+	/**
+	 * Get the CRC-32 checksum of the content of a file
+	 */
+	static long checksum(ByteBuffer bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes.duplicate());
+		return crc.getValue();
+	}
+
+	/**
+	 * Write a snapshot of the content of a file
+	 *
+	 * @param source
+	 *            The content of the source file as it is on disk
+	 */
+	static void write(ConfigData configData, ByteBuffer source, File target) throws IOException {
+		Map<String, Integer> strings = new HashMap<String, Integer>();
+		List<String> table = new ArrayList<String>();
+		List<ConfigLine> lines = configData.getLines();
+		Set<String> external = configData.findExternal();
+		int[] records = new int[lines.size() * 3];
+		String section = null;
+		for (int i = 0; i < lines.size(); i++) {
+			ConfigLine configLine = lines.get(i);
+			boolean header = configData.getSectionMap().containsKey(configLine);
+			if (header) {
+				section = configLine.getSection();
+			}
+			String rawLine = configLine.getRawLine();
+			records[i * 3] = intern(rawLine, strings, table);
+			records[i * 3 + 1] = (rawLine != configLine.getLine()
+					&& !external.contains(ConfigData.nodeName(section, configLine.getKey())))
+							? intern(configLine.getValue(), strings, table)
+							: -1;
+			records[i * 3 + 2] = header ? intern(configLine.getSection(), strings, table) : -1;
+		}
+		Map<String, Set<String>> references = configData.getReferences();
+		for (Map.Entry<String, Set<String>> entry : references.entrySet()) {
+			intern(entry.getKey(), strings, table);
+			for (String node : entry.getValue()) {
+				intern(node, strings, table);
+			}
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(source.remaining());
+		out.writeLong(checksum(source));
+		writeString(out, configData.getCharset().name());
+		out.writeBoolean(configData.hasBOM());
+		writeString(out, configData.getLineSeparator());
+
+		out.writeInt(table.size());
+		for (String string : table) {
+			writeString(out, string);
+		}
+		out.writeInt(lines.size());
+		for (int record : records) {
+			out.writeInt(record);
+		}
+		out.writeInt(references.size());
+		for (Map.Entry<String, Set<String>> entry : references.entrySet()) {
+			out.writeInt(strings.get(entry.getKey()));
+			out.writeInt(entry.getValue().size());
+			for (String node : entry.getValue()) {
+				out.writeInt(strings.get(node));
+			}
+		}
+		out.flush();
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeLong(crc.getValue());
+		out.flush();
+
+		Path path = target.toPath().toAbsolutePath();
+		Path temp = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".tmp");
+		try {
+			Files.write(temp, bytes.toByteArray());
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static int intern(String string, Map<String, Integer> strings, List<String> table) {
+		Integer index = strings.get(string);
+		if (index == null) {
+			index = table.size();
+			strings.put(string, index);
+			table.add(string);
+		}
+		return index;
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read the snapshot of a file if it is newer than the file and was made
+	 * from the current content of the file<br>
+	 * The modification times and the size in the header of the snapshot are
+	 * checked before the rest of the snapshot is read and the checksum of the
+	 * source is computed. The values that depend on a property or a script are
+	 * not resolved, see {@link ConfigData#resolveExternal()}.
+	 *
+	 * @param source
+	 *            The content of the source file as it is on disk
+	 * @param charset
+	 *            The Charset the source file would be decoded with
+	 * @return the content of the file or null if there is no usable snapshot
+	 */
+	static ConfigData read(File file, ByteBuffer source, Charset charset) {
+		Path snapshot = snapshotFile(file).toPath();
+		try {
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(snapshot, BasicFileAttributes.class);
+			} catch (NoSuchFileException e) {
+				return null;
+			}
+			if (!attributes.isRegularFile() || attributes.size() < HEADER_SIZE + 8
+					|| attributes.lastModifiedTime().toMillis() < file.lastModified()) {
+				return null;
+			}
+			ByteBuffer in = ByteBuffer.allocate((int) Math.min(attributes.size(), Integer.MAX_VALUE));
+			try (FileChannel channel = FileChannel.open(snapshot)) {
+				while (in.position() < HEADER_SIZE && channel.read(in) >= 0) {
+					// read the header
+				}
+				if (in.position() < HEADER_SIZE || in.getInt(0) != MAGIC || in.getInt(4) != VERSION
+						|| in.getLong(8) != source.remaining()) {
+					return null;
+				}
+				while (in.hasRemaining() && channel.read(in) >= 0) {
+					// read the rest
+				}
+			}
+			in.flip();
+			in.position(16);
+			if (in.getLong() != checksum(source)) {
+				return null;
+			}
+			CRC32 crc = new CRC32();
+			ByteBuffer content = ByteBuffer.wrap(in.array(), 0, in.limit() - 8);
+			crc.update(content);
+			if (crc.getValue() != in.getLong(in.limit() - 8)) {
+				return null;
+			}
+
+			String charsetName = readString(in);
+			if (!Charset.forName(charsetName).equals(charset)) {
+				return null;
+			}
+			ConfigData configData = new ConfigData(charset, in.get() != 0, readString(in));
+
+			String[] table = new String[in.getInt()];
+			for (int i = 0; i < table.length; i++) {
+				table[i] = readString(in);
+			}
+			int lineCount = in.getInt();
+			ConfigLine sectionLine = null;
+			for (int i = 0; i < lineCount; i++) {
+				ConfigLine configLine = new ConfigLine(table[in.getInt()]);
+				int value = in.getInt();
+				if (value != -1) {
+					configLine.setValue(table[value]);
+				}
+				int section = in.getInt();
+				if (section != -1) {
+					configLine.setSection(table[section]);
+					sectionLine = configLine;
+				}
+				configData.restoreLine(configLine, sectionLine);
+			}
+			int referenceCount = in.getInt();
+			for (int i = 0; i < referenceCount; i++) {
+				String node = table[in.getInt()];
+				Set<String> referenced = new HashSet<String>();
+				for (int j = in.getInt(); j > 0; j--) {
+					referenced.add(table[in.getInt()]);
+				}
+				configData.setReferences(node, referenced);
+			}
+			return configData;
+		} catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+				| NullPointerException e) {
+			// an unreadable snapshot is ignored, the source file is parsed
+			return null;
+		}
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		String string = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return string;
+	}
+
+}
@@ -0,0 +1,240 @@
+package nl.arudos.jconfigfile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background thread that saves a {@link JConfigFile} behind its changes<br>
+ * Changes only mark the file dirty. The writer saves the latest content at
+ * most once per interval, so any number of changes within an interval are
+ * written by a single save. A flush saves the pending changes without waiting
+ * for the interval. A load of the file saves the pending changes first. When
+ * the writer is stopped, or the JVM shuts down, the pending changes are saved
+ * before the thread ends. At shutdown the final save is only waited for a
+ * limited time, so a lock that is never released can not keep the JVM from
+ * exiting; the changes are lost then. A save that fails is
+ * retried after the interval.
+ *
+ * @author Rudo Peters
+ *
+ */
+final class ConfigWriter implements Runnable {
+	private static final Logger LOGGER = Logger.getLogger(ConfigWriter.class.getName());
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+	private final JConfigFile configFile;
+	private final String name;
+	private final long intervalNanos;
+	private final Thread thread;
+	private final Thread shutdownHook;
+	private boolean running = true;
+	private boolean dirty = false;
+	private boolean saving = false;
+	private boolean flushRequested = false;
+	private long lastSave;
+	private List<CompletableFuture<Void>> waiting = new ArrayList<CompletableFuture<Void>>();
+	private List<CompletableFuture<Void>> inProgress = new ArrayList<CompletableFuture<Void>>();
+
+	ConfigWriter(JConfigFile configFile, String name, long intervalMillis) {
+		this.configFile = configFile;
+		this.name = name;
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		// the first change waits for the interval as well, so changes made
+		// right after the start are written together
+		this.lastSave = System.nanoTime();
+		this.thread = new Thread(this, "JConfigFile writer " + name);
+		this.thread.setDaemon(true);
+		this.shutdownHook = new Thread(this::shutdown, "JConfigFile writer shutdown " + name);
+	}
+
+	void start() {
+		thread.start();
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Save the pending changes and end the thread
+	 */
+	void stop() {
+		synchronized (this) {
+			running = false;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// the JVM is shutting down
+		}
+	}
+
+	/**
+	 * Save the pending changes when the JVM shuts down, waiting a limited
+	 * time for the save
+	 */
+	private void shutdown() {
+		synchronized (this) {
+			running = false;
+			notifyAll();
+		}
+		try {
+			thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (thread.isAlive()) {
+			// the writer waits for the lock of the file, it is a daemon thread
+			// so it does not keep the JVM alive
+			LOGGER.log(Level.WARNING, "Final save of " + name + " did not complete within "
+					+ SHUTDOWN_TIMEOUT_MILLIS + " ms, the changes are lost");
+		}
+	}
+
+	/**
+	 * Remember that the content changed since the last save
+	 */
+	synchronized void markDirty() {
+		dirty = true;
+		notifyAll();
+	}
+
+	/**
+	 * Save the pending changes on the calling thread, before a load replaces
+	 * the content they are in. A save that the writer thread started is not
+	 * relied on, it may not have written the latest content yet. Must be
+	 * called with the write lock of the file held.
+	 *
+	 * @throws IOException
+	 *             if the save failed, the changes are still pending
+	 */
+	void saveNow() throws IOException {
+		List<CompletableFuture<Void>> done;
+		synchronized (this) {
+			if (!dirty && !saving) {
+				return;
+			}
+			dirty = false;
+			flushRequested = false;
+			done = waiting;
+			waiting = new ArrayList<CompletableFuture<Void>>();
+		}
+		try {
+			configFile.saveBehind();
+		} catch (IOException | RuntimeException e) {
+			synchronized (this) {
+				dirty = true;
+				waiting.addAll(done);
+			}
+			throw e;
+		}
+		synchronized (this) {
+			lastSave = System.nanoTime();
+		}
+		for (CompletableFuture<Void> future : done) {
+			future.complete(null);
+		}
+	}
+
+	/**
+	 * Save the pending changes now
+	 *
+	 * @return a future that completes when every change made before the call
+	 *         is in the file
+	 */
+	synchronized CompletableFuture<Void> flush() {
+		CompletableFuture<Void> future = new CompletableFuture<Void>();
+		if (dirty) {
+			waiting.add(future);
+			flushRequested = true;
+			notifyAll();
+		} else if (saving) {
+			// the save in progress holds every change
+			inProgress.add(future);
+		} else {
+			future.complete(null);
+		}
+		return future;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			synchronized (this) {
+				try {
+					waitForChanges();
+				} catch (InterruptedException e) {
+					running = false;
+				}
+				if (!dirty) {
+					return;
+				}
+				dirty = false;
+				flushRequested = false;
+				saving = true;
+				inProgress = waiting;
+				waiting = new ArrayList<CompletableFuture<Void>>();
+			}
+
+			IOException error = null;
+			try {
+				configFile.saveBehind();
+			} catch (IOException e) {
+				error = e;
+			} catch (RuntimeException e) {
+				error = new IOException(e);
+			}
+
+			List<CompletableFuture<Void>> done;
+			boolean retry;
+			synchronized (this) {
+				lastSave = System.nanoTime();
+				saving = false;
+				done = inProgress;
+				inProgress = new ArrayList<CompletableFuture<Void>>();
+				if (error != null) {
+					dirty = true;
+				}
+				retry = running;
+			}
+			for (CompletableFuture<Void> future : done) {
+				if (error == null) {
+					future.complete(null);
+				} else {
+					future.completeExceptionally(error);
+				}
+			}
+			if (error != null) {
+				if (!retry) {
+					LOGGER.log(Level.WARNING, "Final save of " + name + " failed, the changes are lost", error);
+					return;
+				}
+				LOGGER.log(Level.WARNING, "Save of " + name + " failed, retrying after the interval", error);
+			}
+		}
+	}
+
+	/**
+	 * Wait until there are changes and the interval since the last save has
+	 * passed, a flush or stop ends the wait early. Must be called with the
+	 * monitor held.
+	 */
+	private void waitForChanges() throws InterruptedException {
+		while (running && !dirty) {
+			wait();
+		}
+		long remaining;
+		while (running && !flushRequested && (remaining = lastSave + intervalNanos - System.nanoTime()) > 0) {
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+	}
+
+}
@@ -1,24 +1,25 @@
 package nl.arudos.jconfigfile;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Class for reading and writing textual configuration files<br>
@@ -29,20 +30,47 @@ import javax.script.ScriptException;
  * -> other variable: driver=${[Browser settings].webdriver.binary}<br>
  * -> environment variable: hostname=${COMPUTERNAME}<br>
  * -> system property: vendor=${java.vendor}<br>
+ * -> any other {@link PropertySource}: see setPropertySource()<br>
  * -> JavaScript expression: result=${!-var s='hello'; s;-!}<br>
+ * <br>
+ * Instances are thread safe. Reads never block: they use an immutable
+ * snapshot of the parsed file, which is replaced as a whole by load() and by
+ * every change. Every change is saved before it is published and before it
+ * returns, unless the file is saved behind its changes, see
+ * startWriteBehind().
  * 
  * @author Rudo Peters
  *
  */
 public class JConfigFile {
-	private final char BOM_CHAR = 0xFEFF;
-	private List<ConfigLine> configLines = null;
-	private Map<ConfigLine, ArrayList<ConfigLine>> sectionMap = null;
+	private static final Logger LOGGER = Logger.getLogger(JConfigFile.class.getName());
+	private static final char BOM_CHAR = ConfigData.BOM_CHAR;
+	private static final AtomicReferenceFieldUpdater<JConfigFile, ConfigData> DATA = AtomicReferenceFieldUpdater
+			.newUpdater(JConfigFile.class, ConfigData.class, "data");
+	private static final AtomicReferenceFieldUpdater<JConfigFile, ConfigFileWatcher.FileState> SAVED_STATE = AtomicReferenceFieldUpdater
+			.newUpdater(JConfigFile.class, ConfigFileWatcher.FileState.class, "savedState");
+
+	private volatile ConfigData data = null;
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private volatile Thread transactionOwner = null;
+	private ConfigData pending = null;
+	private boolean dirty = false;
 	private File file;
-	private String detectedSeparator = "";
-	private boolean detectedBOM = false;
-	private Charset detectedCharset = null;
 	private Charset suppliedCharset = null;
+	private volatile boolean syncOnSave = false;
+	private volatile boolean incrementalReload = false;
+	private boolean lazyLoading = false;
+	private boolean lazyResolution = false;
+	private final List<ConfigChangeListener> listeners = new CopyOnWriteArrayList<ConfigChangeListener>();
+	private ConfigFileWatcher watcher = null;
+	private volatile ConfigWriter writer = null;
+	private volatile ConfigFileWatcher.FileState fileState = null;
+	private volatile ConfigFileWatcher.FileState savedState = null;
+	private volatile ConfigRegistry registry = null;
+	private static volatile ConfigMetricsListener defaultMetrics = null;
+
+	private volatile ConfigMetricsListener metrics = defaultMetrics;
+	private volatile PropertySource properties = PropertySource.defaults();
 	public final String ENCODING_ANSI = "Cp1252";
 
 	/**
@@ -74,6 +102,113 @@ public class JConfigFile {
 		load();
 	}
 
+	/**
+	 * Initialise the configuration file with the supplied character encoding,
+	 * optionally parsing each section only when it is first used<br>
+	 * A lazily loaded file only has its section headers parsed on a load. The
+	 * keys of a section are parsed, and their placeholders resolved, the first
+	 * time the section is read or changed. Duplicate keys in a section are
+	 * reported at that time instead of by the load. Until every section has
+	 * been used, the whole decoded file is kept in memory as a char[] with the
+	 * offsets of its lines, so a lazily loaded file of n characters retains
+	 * about 2n bytes plus 8 bytes per line. This will trigger a file load
+	 * 
+	 * @param file
+	 *            The configuration File
+	 * @param encoding
+	 *            The file encoding, for example Cp1252 (a.k.a ANSI), UTF-8,
+	 *            etc, or null to attempt auto detection of the encoding
+	 * @param lazyLoading
+	 *            true to parse the sections when they are first used, false to
+	 *            parse the whole file on every load
+	 * @throws IOException
+	 */
+	public JConfigFile(File file, String encoding, boolean lazyLoading) throws IOException {
+		this(file, encoding, lazyLoading, false);
+	}
+
+	/**
+	 * Initialise the configuration file with the supplied character encoding,
+	 * optionally resolving the placeholders of a value only when it is first
+	 * read<br>
+	 * A file with lazy resolution keeps the values as they are written in the
+	 * file, a value is resolved the first time it is read and the result is
+	 * kept until a key that it refers to changes. Saving the file writes the
+	 * placeholders instead of their resolved values. Change events report the
+	 * changed keys with the values as they are written in the file, and the
+	 * keys that refer to them with their resolved values. This will trigger a
+	 * file load
+	 * 
+	 * @param file
+	 *            The configuration File
+	 * @param encoding
+	 *            The file encoding, for example Cp1252 (a.k.a ANSI), UTF-8,
+	 *            etc, or null to attempt auto detection of the encoding
+	 * @param lazyLoading
+	 *            true to parse the sections when they are first used, false to
+	 *            parse the whole file on every load
+	 * @param lazyResolution
+	 *            true to resolve the placeholders of a value when it is read,
+	 *            false to resolve all placeholders on every load
+	 * @throws IOException
+	 */
+	public JConfigFile(File file, String encoding, boolean lazyLoading, boolean lazyResolution) throws IOException {
+		this(file, encoding, lazyLoading, lazyResolution, PropertySource.defaults());
+	}
+
+	/**
+	 * Initialise the configuration file with the supplied character encoding
+	 * and source of the placeholders that are not a reference to a key, see
+	 * {@link #setPropertySource(PropertySource)}. The first load already uses
+	 * the source. This will trigger a file load
+	 * 
+	 * @param file
+	 *            The configuration File
+	 * @param encoding
+	 *            The file encoding, for example Cp1252 (a.k.a ANSI), UTF-8,
+	 *            etc, or null to attempt auto detection of the encoding
+	 * @param propertySource
+	 *            The source of the placeholders that are not a reference
+	 * @throws IOException
+	 */
+	public JConfigFile(File file, String encoding, PropertySource propertySource) throws IOException {
+		this(file, encoding, false, false, propertySource);
+	}
+
+	/**
+	 * Initialise the configuration file with all options, see
+	 * {@link #JConfigFile(File, String, boolean, boolean)} and
+	 * {@link #JConfigFile(File, String, PropertySource)}. This will trigger a
+	 * file load
+	 * 
+	 * @param file
+	 *            The configuration File
+	 * @param encoding
+	 *            The file encoding, for example Cp1252 (a.k.a ANSI), UTF-8,
+	 *            etc, or null to attempt auto detection of the encoding
+	 * @param lazyLoading
+	 *            true to parse the sections when they are first used, false to
+	 *            parse the whole file on every load
+	 * @param lazyResolution
+	 *            true to resolve the placeholders of a value when it is read,
+	 *            false to resolve all placeholders on every load
+	 * @param propertySource
+	 *            The source of the placeholders that are not a reference
+	 * @throws IOException
+	 */
+	public JConfigFile(File file, String encoding, boolean lazyLoading, boolean lazyResolution,
+			PropertySource propertySource) throws IOException {
+		if (lazyLoading && lazyResolution) {
+			throw new IllegalArgumentException("Lazy loading can not be combined with lazy resolution");
+		}
+		this.file = file;
+		this.suppliedCharset = (encoding != null) ? Charset.forName(encoding) : null;
+		this.lazyLoading = lazyLoading;
+		this.lazyResolution = lazyResolution;
+		setPropertySource(propertySource);
+		load();
+	}
+
 	private String validateNotNull(String field, String value) {
 		if (value == null) {
 			throw new IllegalArgumentException(String.format("%s must not be null", field));
@@ -88,13 +223,49 @@ public class JConfigFile {
 		return value;
 	}
 
+	/**
+	 * Get the snapshot to read from: the changes of a running transaction for
+	 * the thread that started it, the published snapshot for all other threads
+	 */
+	ConfigData current() {
+		if (transactionOwner == Thread.currentThread()) {
+			return pending;
+		}
+		return data;
+	}
+
+	/**
+	 * Get the snapshot to read a section from, with the section parsed<br>
+	 * A section of a lazily loaded file is parsed into a copy of the snapshot,
+	 * which is published unless a load or change replaced the snapshot in the
+	 * meantime. Changes of a running transaction are parsed in place.
+	 */
+	ConfigData current(String section) {
+		ConfigData snapshot = current();
+		if (snapshot.isParsed(section)) {
+			return snapshot;
+		}
+		if (transactionOwner == Thread.currentThread()) {
+			snapshot.setMetrics(metrics);
+			snapshot.setPropertySource(properties);
+			snapshot.parseSection(section);
+			return snapshot;
+		}
+		ConfigData parsed = snapshot.copy();
+		parsed.setMetrics(metrics);
+		parsed.setPropertySource(properties);
+		parsed.parseSection(section);
+		DATA.compareAndSet(this, snapshot, parsed);
+		return parsed;
+	}
+
 	/**
 	 * Get the line separator
 	 * 
 	 * @return String with the line separator
 	 */
 	public String getLineSeparator() {
-		return this.detectedSeparator;
+		return current().getLineSeparator();
 	}
 
 	/**
@@ -103,7 +274,7 @@ public class JConfigFile {
 	 * @return boolean true if a BOM was found, false otherwise
 	 */
 	public boolean hasBOM() {
-		return this.detectedBOM;
+		return current().hasBOM();
 	}
 
 	/**
@@ -112,52 +283,45 @@ public class JConfigFile {
 	 * @return Charset
 	 */
 	public Charset getCharset() {
-		return this.detectedCharset;
-	}
-
-	private void detectCharset() throws IOException {
-		final String[][] knownBOMs = new String[][] {
-				new String[] { "UTF-8", new String(new char[] { 0xEF, 0xBB, 0xBF }) },
-				new String[] { "UnicodeBig", new String(new char[] { 0xFE, 0xFF }) },
-				new String[] { "UnicodeLittle", new String(new char[] { 0xFF, 0xFE }) },
-				new String[] { "x-UTF-32BE-BOM", new String(new char[] { 0x00, 0x00, 0xFE, 0xFF }) },
-				new String[] { "x-UTF-32LE-BOM", new String(new char[] { 0xFF, 0xFE, 0x00, 0x00 }) } };
-
-		String potentialBOM = "";
-		String data = "";
-
-		// read the BOM and the first 4 data bytes from the file
-		try (FileInputStream is = new FileInputStream(file)) {
-			int i;
-			int j = 0;
-			while ((i = is.read()) != -1 && j < 8) {
-				data += (char) i;
-				if (j < 4) {
-					potentialBOM += (char) i;
-				}
-				j++;
-			}
-		}
+		return current().getCharset();
+	}
+
+	/**
+	 * Find the Charset of a file from its first bytes: the BOM, if present,
+	 * otherwise the supplied Charset, otherwise the position of zero bytes in
+	 * the first character, otherwise UTF-8
+	 */
+	static Charset detectCharset(ByteBuffer bytes, Charset suppliedCharset) {
+		// the UTF-32LE BOM starts with the UTF-16LE BOM, so it is checked first
+		final byte[][] knownBOMs = new byte[][] { new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF },
+				new byte[] { 0x00, 0x00, (byte) 0xFE, (byte) 0xFF },
+				new byte[] { (byte) 0xFF, (byte) 0xFE, 0x00, 0x00 }, new byte[] { (byte) 0xFE, (byte) 0xFF },
+				new byte[] { (byte) 0xFF, (byte) 0xFE } };
+		final String[] knownBOMCharsets = new String[] { "UTF-8", "x-UTF-32BE-BOM", "x-UTF-32LE-BOM", "UnicodeBig",
+				"UnicodeLittle" };
+
+		int length = bytes.remaining();
+		int offset = bytes.position();
 
 		// use the supplied Charset (if any) as the default
-		Charset cs = this.suppliedCharset;
+		Charset cs = suppliedCharset;
 
 		// if the file has a BOM, use that for determining the Charset
 		for (int k = 0; k < knownBOMs.length; k++) {
-			if (potentialBOM.startsWith(knownBOMs[k][1])) {
-				cs = Charset.forName(knownBOMs[k][0]);
+			if (startsWith(bytes, knownBOMs[k])) {
+				cs = Charset.forName(knownBOMCharsets[k]);
 				break;
 			}
 		}
 
 		// if the Charset is still unknown, try to find the number of bytes per
 		// character and set the Charset accordingly
-		if (cs == null && data.length() >= 2) {
-			int byte0 = data.charAt(0);
-			int byte1 = data.charAt(1);
-			if (data.length() >= 4) {
-				int byte2 = data.charAt(2);
-				int byte3 = data.charAt(3);
+		if (cs == null && length >= 2) {
+			int byte0 = bytes.get(offset);
+			int byte1 = bytes.get(offset + 1);
+			if (length >= 4) {
+				int byte2 = bytes.get(offset + 2);
+				int byte3 = bytes.get(offset + 3);
 				if (byte0 == 0 && byte1 == 0 && byte2 == 0 && byte3 != 0) {
 					cs = Charset.forName("UTF-32BE");
 				} else if (byte0 != 0 && byte1 == 0 && byte2 == 0 && byte3 == 0) {
@@ -178,84 +342,230 @@ public class JConfigFile {
 			cs = Charset.forName("UTF-8");
 		}
 
-		// save the detected values
-		this.detectedCharset = cs;
+		return cs;
+	}
+
+	private static boolean startsWith(ByteBuffer bytes, byte[] prefix) {
+		if (bytes.remaining() < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes.get(bytes.position() + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
 
+	/**
+	 * Read the complete file into a single heap buffer<br>
+	 * The whole file is decoded onto the heap anyway, so mapping it would gain
+	 * nothing and keep the file mapped until the buffer is garbage collected,
+	 * which makes replacing the file fail on some platforms.
+	 */
+	private ByteBuffer readFile() throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(String.format("File '%s' is too large", file));
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+				// keep reading until the buffer is full
+			}
+			buffer.flip();
+			return buffer;
+		}
 	}
 
 	/**
-	 * Load the configuration file
+	 * Load the configuration file<br>
+	 * When the file is saved behind its changes, the changes that are not
+	 * saved yet are saved first, so the load does not discard them.
 	 * 
 	 * @throws IOException
+	 *             if the file can not be read, or the pending changes can not
+	 *             be saved, the current configuration is kept
 	 */
 	public void load() throws IOException {
-		final char CR = new String("\r").charAt(0);
-		final char LF = new String("\n").charAt(0);
-
-		sectionMap = null;
-		sectionMap = new LinkedHashMap<ConfigLine, ArrayList<ConfigLine>>();
-		configLines = null;
-		configLines = new ArrayList<ConfigLine>();
-
-		detectCharset();
-
-		String data = "";
-		String separator = "";
-
-		try (BufferedReader br = new BufferedReader(
-				new InputStreamReader(new FileInputStream(file), this.getCharset()))) {
-			int i;
-			int j = 0;
-			data = "";
-			while ((i = br.read()) != -1) {
-				if (j == 0) {
-					j++;
-					if (i == BOM_CHAR) {
-						this.detectedBOM = true;
-						continue;
-					}
-					this.detectedBOM = false;
-				}
-				if ((char) i == CR) {
-					separator += CR;
-				} else if ((char) i == LF) {
-					separator += LF;
-				} else if (separator.length() > 0) {
-					break;
-				} else {
-					data += (char) i;
-				}
+		ConfigData oldData;
+		ConfigData loaded;
+		writeLock.lock();
+		try {
+			ConfigWriter writer = this.writer;
+			if (writer != null) {
+				writer.saveNow();
+			}
+			ConfigFileWatcher.FileState state = ConfigFileWatcher.FileState.read(file.toPath());
+			loaded = read(incrementalReload ? data : null);
+			this.fileState = state;
+			this.savedState = null;
+			oldData = this.data;
+			this.data = loaded;
+			if (transactionOwner == Thread.currentThread()) {
+				this.pending = loaded.copy();
+				this.dirty = false;
 			}
+		} finally {
+			writeLock.unlock();
+		}
+		fireChanges(oldData, loaded);
+	}
+
+	/**
+	 * Compile the file into a binary snapshot next to it, named after the file
+	 * with the extension .snapshot<br>
+	 * As long as the file is not changed, a load reads the snapshot instead of
+	 * decoding, parsing and resolving the text again. A snapshot that does not
+	 * match the size and checksum of the file is ignored, so compile the
+	 * snapshot again after the file was changed. Values that depend on an
+	 * environment variable, a system property, the property source or a script
+	 * are resolved again on every load, the snapshot only saves that work for
+	 * the values that depend on the file alone. The snapshot is not used by a
+	 * file that is loaded lazily or resolves its placeholders lazily, those
+	 * always read the text.
+	 *
+	 * @return File the snapshot file
+	 * @throws IOException
+	 */
+	public File compileSnapshot() throws IOException {
+		ByteBuffer bytes = readFile();
+		Charset charset = detectCharset(bytes, suppliedCharset);
+		File snapshotFile = ConfigSnapshot.snapshotFile(file);
+		ConfigSnapshot.write(parse(bytes, charset, null, false, false, null, properties), bytes, snapshotFile);
+		return snapshotFile;
+	}
 
-			this.detectedSeparator = separator;
+	/**
+	 * Read, parse and resolve the file into a new snapshot
+	 *
+	 * @param previous
+	 *            The snapshot to take the unchanged sections from, or null to
+	 *            parse the whole file
+	 */
+	private ConfigData read(ConfigData previous) throws IOException {
+		ConfigMetricsListener metrics = this.metrics;
+		long start = (metrics != null) ? System.nanoTime() : 0;
+		ByteBuffer bytes = readFile();
+		start = measure(metrics, ConfigMetricsListener.Phase.READ, start);
+		Charset charset = detectCharset(bytes, suppliedCharset);
+		start = measure(metrics, ConfigMetricsListener.Phase.DETECT_CHARSET, start);
+
+		// a snapshot holds every line parsed and resolved, which is what lazy
+		// loading and lazy resolution avoid
+		ConfigData configData = (lazyLoading || lazyResolution) ? null : ConfigSnapshot.read(file, bytes, charset);
+		if (configData == null) {
+			configData = parse(bytes, charset, previous, lazyLoading, lazyResolution, metrics, properties);
+		} else {
+			configData.setMetrics(metrics);
+			configData.setPropertySource(properties);
+			configData.resolveExternal();
+		}
+		ConfigRegistry registry = this.registry;
+		if (registry != null) {
+			registry.resolve(this, configData);
+		}
+		measure(metrics, ConfigMetricsListener.Phase.PARSE, start);
+		return configData;
+	}
 
-			// add the default section
-			configLines.add(new ConfigLine("[]"));
+	/**
+	 * Report the time of a phase to the metrics listener, if there is one
+	 *
+	 * @param start
+	 *            The start of the phase in nanoseconds
+	 * @return the end of the phase in nanoseconds
+	 */
+	private static long measure(ConfigMetricsListener metrics, ConfigMetricsListener.Phase phase, long start) {
+		if (metrics == null) {
+			return 0;
+		}
+		long now = System.nanoTime();
+		metrics.timing(phase, now - start);
+		return now;
+	}
 
-			configLines.add(new ConfigLine(data));
+	/**
+	 * Add the file to a registry, its placeholders that refer to other files of
+	 * the registry are resolved from then on
+	 */
+	void setRegistry(ConfigRegistry registry) {
+		this.registry = registry;
+	}
 
-			if (i == -1) {
-				return;
+	/**
+	 * Resolve the placeholders that refer to other files of the registry in the
+	 * loaded content, before the file is handed out by the registry
+	 *
+	 * @return true if a value was changed
+	 */
+	boolean resolveRegistryReferences() {
+		writeLock.lock();
+		try {
+			// readers may use the published snapshot, so a copy is resolved
+			ConfigData resolved = this.data.copy();
+			if (!registry.resolve(this, resolved)) {
+				return false;
 			}
+			this.data = resolved;
+			return true;
+		} finally {
+			writeLock.unlock();
+		}
+	}
 
-			// read the remainder of the second line
-			data = br.readLine();
-			if (data != null) {
-				configLines.add(new ConfigLine((char) i + data));
-			} else {
-				configLines.add(new ConfigLine((char) i + ""));
-				return;
-			}
+	/**
+	 * Parse and resolve the content of the file
+	 *
+	 * @param previous
+	 *            The snapshot to take the unchanged sections from, or null to
+	 *            parse the whole file
+	 * @param lazy
+	 *            true to parse the sections when they are first used
+	 * @param lazyResolution
+	 *            true to resolve the placeholders when the values are read
+	 * @param metrics
+	 *            The listener for the metrics or null
+	 * @param properties
+	 *            The source of the placeholders that are not a reference
+	 */
+	private static ConfigData parse(ByteBuffer bytes, Charset charset, ConfigData previous, boolean lazy,
+			boolean lazyResolution, ConfigMetricsListener metrics, PropertySource properties) {
+		final char CR = '\r';
+		final char LF = '\n';
+
+		CharBuffer chars = charset.decode(bytes.duplicate());
+		char[] buffer = chars.array();
+		int end = chars.arrayOffset() + chars.limit();
+		int start = chars.arrayOffset() + chars.position();
+
+		boolean bom = (start < end && buffer[start] == BOM_CHAR);
+		if (bom) {
+			start++;
+		}
 
-			// read the other lines
-			while ((data = br.readLine()) != null) {
-				configLines.add(new ConfigLine(data));
+		// the first line break found is used as the line separator of the file
+		String separator = "";
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == CR || buffer[i] == LF) {
+				separator = (buffer[i] == CR && i + 1 < end && buffer[i + 1] == LF) ? "\r\n"
+						: String.valueOf(buffer[i]);
+				break;
 			}
-
 		}
 
-		parse();
-		replaceProperties();
+		int[] offsets = ConfigData.splitLines(buffer, start, end);
+		if (lazy) {
+			return ConfigData.scan(charset, bom, separator, buffer, offsets, metrics, properties);
+		}
+		if (metrics != null) {
+			metrics.count(ConfigMetricsListener.Counter.LINES_PARSED, offsets.length / 2);
+		}
+		if (previous != null && previous.getCharset().equals(charset) && previous.hasBOM() == bom
+				&& previous.getLineSeparator().equals(separator)) {
+			return ConfigData.parse(previous, buffer, offsets, metrics, properties, lazyResolution);
+		}
+		return ConfigData.parse(charset, bom, separator, buffer, offsets, metrics, properties, lazyResolution);
 	}
 
 	/**
@@ -264,121 +574,233 @@ public class JConfigFile {
 	 * @throws IOException
 	 */
 	public void save() throws IOException {
-		try (BufferedWriter bw = new BufferedWriter(
-				new OutputStreamWriter(new FileOutputStream(file), this.getCharset()))) {
-			if (this.hasBOM()) {
-				bw.write(BOM_CHAR);
-			}
-			for (ConfigLine configLine : configLines) {
-				if (!configLine.getLine().equals("[]")) {
-					bw.write(configLine.getLine() + this.getLineSeparator());
-				}
-			}
+		writeLock.lock();
+		try {
+			save(current());
+		} finally {
+			writeLock.unlock();
 		}
 	}
 
-	private void parse() {
-		ArrayList<ConfigLine> currentSectionLines = null;
-		ConfigLine currentSection = null;
-		Pattern sectionPattern = Pattern.compile("^\\s?\\[(.*)\\]\\s?$");
-		for (ConfigLine configLine : this.configLines) {
-			if (!configLine.hasData()) {
-				continue;
-			}
-			String line = configLine.getData();
-			Matcher m = sectionPattern.matcher(line);
-			if (m.matches() && m.groupCount() == 1) {
-				if (currentSectionLines != null) {
-					// store the previous section
-					sectionMap.put(currentSection, currentSectionLines);
-					currentSectionLines = null;
-				}
-				// create the new section
-				configLine.setSection(m.group(1).trim());
-				for (ConfigLine l : sectionMap.keySet()) {
-					if (l.getSection().equalsIgnoreCase(configLine.getSection())) {
-						throw new IllegalArgumentException(
-								String.format("Duplicate section '%s'", configLine.getSection()));
-					}
+	/**
+	 * Save the latest content for the background writer
+	 */
+	void saveBehind() throws IOException {
+		writeLock.lock();
+		try {
+			save(this.data);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private void save(ConfigData configData) throws IOException {
+		ConfigMetricsListener metrics = this.metrics;
+		long start = (metrics != null) ? System.nanoTime() : 0;
+		ByteBuffer bytes = configData.getCharset().encode(CharBuffer.wrap(configData.getContent()));
+		int length = bytes.remaining();
+		writeAtomically(bytes);
+		if (metrics != null) {
+			measure(metrics, ConfigMetricsListener.Phase.SAVE, start);
+			metrics.count(ConfigMetricsListener.Counter.SAVES, 1);
+			metrics.count(ConfigMetricsListener.Counter.BYTES_WRITTEN, length);
+		}
+	}
+
+	/**
+	 * Write the content to a temporary file next to the configuration file and
+	 * move it over the configuration file, so other readers either see the
+	 * old or the new content and never a partially written file
+	 */
+	private void writeAtomically(ByteBuffer bytes) throws IOException {
+		Path target = file.toPath().toAbsolutePath();
+		if (Files.isSymbolicLink(target)) {
+			// replace the file the link points to, not the link itself
+			target = target.toRealPath();
+		}
+		Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+		try {
+			copyPermissions(target, temp);
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (bytes.hasRemaining()) {
+					channel.write(bytes);
 				}
-				currentSectionLines = new ArrayList<ConfigLine>();
-				currentSection = configLine;
-			} else {
-				for (ConfigLine l : currentSectionLines) {
-					if (l.getKey().equalsIgnoreCase(configLine.getKey())) {
-						throw new IllegalArgumentException(String.format("Duplicate key '%s' in section '%s'",
-								configLine.getKey(), currentSection.getSection()));
-					}
+				if (this.syncOnSave) {
+					channel.force(true);
 				}
-				currentSectionLines.add(configLine);
 			}
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			if (this.syncOnSave) {
+				syncDirectory(target.getParent());
+			}
+			this.fileState = ConfigFileWatcher.FileState.read(file.toPath());
+			this.savedState = this.fileState;
+		} finally {
+			Files.deleteIfExists(temp);
 		}
-		if (currentSectionLines != null) {
-			// store the last section
-			sectionMap.put(currentSection, currentSectionLines);
-		}
-
 	}
 
-	private String executeJavascript(String script) {
-		ScriptEngineManager factory = new ScriptEngineManager();
-		ScriptEngine engine = factory.getEngineByName("JavaScript");
+	private static void copyPermissions(Path source, Path target) {
 		try {
-			return (String) engine.eval(script).toString();
-		} catch (ScriptException e) {
-			return "##EXCEPTION: " + e.getLocalizedMessage();
-		}
-	}
-
-	private void replaceProperties() {
-		Pattern variablePattern = Pattern.compile(".*(\\$\\{(!-)?(.+?)(-!)?\\}).*");
-		Pattern sectionPattern = Pattern.compile("^\\[(.*)\\]:(.*?)$");
-		int count;
-		do {
-			count = 0;
-			for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : sectionMap.entrySet()) {
-				ArrayList<ConfigLine> configLines = entry.getValue();
-				for (int i = 0; i < configLines.size(); i++) {
-					String s = configLines.get(i).getData();
-					Matcher m = variablePattern.matcher(s);
-					if (m.matches()) {
-						String newValue = null;
-						if (m.group(2) != null || m.group(4) != null) {
-							if (m.group(2) == null) {
-								throw new RuntimeException("JavaScript start tag '!-' not found");
-							} else if (m.group(4) == null) {
-								throw new RuntimeException("JavaScript end tag '-!' not found");
-							}
-							newValue = executeJavascript(m.group(3));
-						} else {
-							String propertyName = m.group(3);
-							if (propertyName.isEmpty()) {
-								continue;
-							}
-							if (propertyName.startsWith("[")) {
-								Matcher matcher = sectionPattern.matcher(propertyName);
-								if (matcher.matches() && matcher.groupCount() == 2) {
-									String section = matcher.group(1);
-									String name = matcher.group(2);
-									newValue = getValue(section, name);
-								}
-							}
-							if (newValue == null) {
-								newValue = System.getenv(propertyName);
-							}
-							if (newValue == null) {
-								newValue = System.getProperty(propertyName);
-							}
-						}
-						if (newValue != null) {
-							s = s.replace(m.group(1), newValue);
-							configLines.get(i).setData(s);
-							count++;
-						}
-					}
-				}
+			if (Files.exists(source)) {
+				Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
 			}
-		} while (count > 0);
+		} catch (UnsupportedOperationException | IOException e) {
+			// not a POSIX file system, keep the default permissions
+		}
+	}
+
+	private static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not every platform can open or sync a directory
+		}
+	}
+
+	/**
+	 * Force the content of the file to the storage device on every save
+	 * 
+	 * @param syncOnSave
+	 *            true to wait until the saved file is on the storage device,
+	 *            false (the default) to leave that to the operating system
+	 */
+	public void setSyncOnSave(boolean syncOnSave) {
+		this.syncOnSave = syncOnSave;
+	}
+
+	/**
+	 * Check if the file is forced to the storage device on every save
+	 * 
+	 * @return boolean true if every save waits for the storage device
+	 */
+	public boolean isSyncOnSave() {
+		return this.syncOnSave;
+	}
+
+	/**
+	 * Reload only the sections of the file that changed<br>
+	 * The sections whose lines are unchanged are taken over from the current
+	 * content, only the changed sections are parsed and only the placeholders
+	 * of the changed keys and of the keys that refer to them are resolved
+	 * again. Values that depend on an environment variable, a system property,
+	 * the property source or a script are resolved again on every reload, so
+	 * a changed property, a refreshed {@link CachedPropertySource} or a new
+	 * property source reaches the unchanged sections as well. Lazily loaded
+	 * files
+	 * only scan their section headers on a load and are not reloaded
+	 * incrementally.
+	 * 
+	 * @param incrementalReload
+	 *            true to reload only the changed sections, false (the default)
+	 *            to parse the whole file on every load
+	 */
+	public void setIncrementalReload(boolean incrementalReload) {
+		this.incrementalReload = incrementalReload;
+	}
+
+	/**
+	 * Check if sections are parsed when they are first used
+	 * 
+	 * @return boolean true if the file is loaded lazily
+	 */
+	public boolean isLazyLoading() {
+		return this.lazyLoading;
+	}
+
+	/**
+	 * Check if placeholders are resolved when a value is first read
+	 * 
+	 * @return boolean true if the placeholders are resolved lazily
+	 */
+	public boolean isLazyResolution() {
+		return this.lazyResolution;
+	}
+
+	/**
+	 * Check if only the changed sections are parsed on a reload
+	 * 
+	 * @return boolean true if reloads are incremental
+	 */
+	public boolean isIncrementalReload() {
+		return this.incrementalReload;
+	}
+
+	/**
+	 * Set the listener that receives the timings and counters of loads,
+	 * lookups and saves, for example a {@link ConfigMetrics}<br>
+	 * Nothing is measured while no listener is set. A listener set after
+	 * construction misses the initial load, use
+	 * {@link #setDefaultMetricsListener(ConfigMetricsListener)} to measure it.
+	 *
+	 * @param metricsListener
+	 *            The listener, or null (the default) to measure nothing
+	 */
+	public void setMetricsListener(ConfigMetricsListener metricsListener) {
+		this.metrics = metricsListener;
+	}
+
+	/**
+	 * Get the listener that receives the timings and counters
+	 *
+	 * @return ConfigMetricsListener or null if nothing is measured
+	 */
+	public ConfigMetricsListener getMetricsListener() {
+		return this.metrics;
+	}
+
+	/**
+	 * Set the listener that every configuration file created from now on
+	 * starts with, so their initial load is measured as well, for example the
+	 * loads of a {@link ConfigRegistry}<br>
+	 * Files that already exist keep their listener.
+	 *
+	 * @param metricsListener
+	 *            The listener, or null (the default) to measure nothing
+	 */
+	public static void setDefaultMetricsListener(ConfigMetricsListener metricsListener) {
+		defaultMetrics = metricsListener;
+	}
+
+	/**
+	 * Get the listener that new configuration files start with
+	 *
+	 * @return ConfigMetricsListener or null if new files measure nothing
+	 */
+	public static ConfigMetricsListener getDefaultMetricsListener() {
+		return defaultMetrics;
+	}
+
+	/**
+	 * Set the source of the placeholders that are not a reference to a key,
+	 * used from the next load on<br>
+	 * For example a chain of a secrets file, the environment variables and the
+	 * system properties, wrapped in a {@link CachedPropertySource} so the
+	 * properties are not looked up again on every load. Pass the source to
+	 * {@link #JConfigFile(File, String, PropertySource)} to use it for the
+	 * first load as well.
+	 *
+	 * @param propertySource
+	 *            The source, {@link PropertySource#defaults()} by default
+	 */
+	public void setPropertySource(PropertySource propertySource) {
+		if (propertySource == null) {
+			throw new IllegalArgumentException("Property source must not be null");
+		}
+		this.properties = propertySource;
+	}
+
+	/**
+	 * Get the source of the placeholders that are not a reference to a key
+	 *
+	 * @return PropertySource
+	 */
+	public PropertySource getPropertySource() {
+		return this.properties;
 	}
 
 	/**
@@ -388,7 +810,7 @@ public class JConfigFile {
 	 */
 	public List<String> getSections() {
 		List<String> sections = new ArrayList<String>();
-		for (ConfigLine configLine : sectionMap.keySet()) {
+		for (ConfigLine configLine : current().getSectionMap().keySet()) {
 			sections.add(new String(configLine.getSection()));
 		}
 		return sections;
@@ -403,12 +825,8 @@ public class JConfigFile {
 	 */
 	public boolean hasSection(String sectionName) {
 		String section = validateNotNull("Section", sectionName).trim();
-		for (ConfigLine configLine : sectionMap.keySet()) {
-			if (configLine.getSection().equalsIgnoreCase(section)) {
-				return true;
-			}
-		}
-		return false;
+		countLookup();
+		return current().findSection(section) != null;
 	}
 
 	/**
@@ -421,12 +839,12 @@ public class JConfigFile {
 	public List<String> getKeys(String sectionName) {
 		List<String> keys = new ArrayList<>();
 		String section = validateNotNull("Section", sectionName).trim();
-		for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : sectionMap.entrySet()) {
-			if (entry.getKey().getSection().equalsIgnoreCase(section)) {
-				for (ConfigLine configLine : entry.getValue()) {
-					keys.add(new String(configLine.getKey()));
-				}
-				break;
+		countLookup();
+		ConfigData configData = current(section);
+		ConfigLine sectionLine = configData.findSection(section);
+		if (sectionLine != null) {
+			for (ConfigLine configLine : configData.getKeyLines(sectionLine)) {
+				keys.add(new String(configLine.getKey()));
 			}
 		}
 		return keys;
@@ -444,17 +862,8 @@ public class JConfigFile {
 	public boolean hasKey(String sectionName, String keyName) {
 		String section = validateNotNull("Section", sectionName).trim();
 		String key = validateNotNullOrEmpty("Key", keyName).trim();
-		for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : sectionMap.entrySet()) {
-			if (entry.getKey().getSection().equalsIgnoreCase(section)) {
-				for (ConfigLine configLine : entry.getValue()) {
-					if (configLine.getKey().equalsIgnoreCase(key)) {
-						return true;
-					}
-				}
-				return false;
-			}
-		}
-		return false;
+		countLookup();
+		return current(section).findKey(section, key) != null;
 	}
 
 	/**
@@ -471,148 +880,740 @@ public class JConfigFile {
 	public String getValue(String sectionName, String keyName) {
 		String section = validateNotNull("Section", sectionName).trim();
 		String key = validateNotNullOrEmpty("Key", keyName).trim();
-		for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : sectionMap.entrySet()) {
-			if (entry.getKey().getSection().equalsIgnoreCase(section)) {
-				for (ConfigLine configLine : entry.getValue()) {
-					if (configLine.getKey().equalsIgnoreCase(key)) {
-						return new String(configLine.getValue());
-					}
-				}
-			}
-		}
-		return null;
+		countLookup();
+		return current(section).getValue(section, key);
 	}
 
 	/**
-	 * Add a new section to the end of the configuration file This will trigger
-	 * a file write and reload
+	 * Get the value for a key as an int
 	 * 
 	 * @param sectionName
-	 *            Name of the new section (without square brackets)
-	 * @return true when the section was added or false if it already existed
-	 * @throws IOException
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @param defaultValue
+	 *            Value returned when the key is not present or its value is
+	 *            empty
+	 * @return int value of the key
+	 * @throws IllegalArgumentException
+	 *             if the value is not a valid int
 	 */
-	public boolean addSection(String sectionName) throws IOException {
-		String section = validateNotNull("Section", sectionName).trim();
-		if (section.isEmpty()) {
-			return false;
-		}
-		for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : sectionMap.entrySet()) {
-			if (entry.getKey().getSection().equalsIgnoreCase(section)) {
-				return false;
-			}
-		}
-		configLines.add(new ConfigLine("[" + section + "]"));
-		save();
-		return true;
+	public int getInt(String sectionName, String keyName, int defaultValue) {
+		Integer value = getConverted(sectionName, keyName, ValueConverter.INTEGER);
+		return (value != null) ? value : defaultValue;
 	}
 
 	/**
-	 * Set the value for a key This will trigger a file write and reload
+	 * Get the value for a key as a long
 	 * 
 	 * @param sectionName
-	 *            Name of the section
-	 * @param itemKey
+	 *            Name of the section (without square brackets)
+	 * @param keyName
 	 *            Name of the key
-	 * @param itemValue
-	 *            Value of the key, can be null to set a key without value or
-	 *            empty to set an empty value
-	 * @return boolean true if the value was set or false if it was not set
-	 *         because the section does not exist
-	 * @throws IOException
+	 * @param defaultValue
+	 *            Value returned when the key is not present or its value is
+	 *            empty
+	 * @return long value of the key
+	 * @throws IllegalArgumentException
+	 *             if the value is not a valid long
 	 */
-	public boolean setItem(String sectionName, String itemKey, String itemValue) throws IOException {
-		addSection(sectionName);
-		String section = sectionName.trim();
-		String key = validateNotNullOrEmpty("Key", itemKey).trim();
-		String data;
-		for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : sectionMap.entrySet()) {
-			if (entry.getKey().getSection().equalsIgnoreCase(section)) {
-				ConfigLine lastLine = null;
-				for (ConfigLine configLine : entry.getValue()) {
-					String[] parts = configLine.getData().split("=", 2);
-					if (parts[0].trim().equalsIgnoreCase(key)) {
-						if (itemValue != null) {
-							data = parts[0] + "=" + itemValue;
-						} else {
-							data = parts[0];
-						}
-						configLine.setData(data);
-						save();
-						return true;
-					}
-					lastLine = configLine;
-				}
-
-				if (itemValue != null) {
-					data = key + "=" + itemValue;
-				} else {
-					data = key;
-				}
-
-				ConfigLine newLine = new ConfigLine(data);
+	public long getLong(String sectionName, String keyName, long defaultValue) {
+		Long value = getConverted(sectionName, keyName, ValueConverter.LONG);
+		return (value != null) ? value : defaultValue;
+	}
 
-				int j = configLines.lastIndexOf(lastLine);
-				if (j == -1) {
-					j = configLines.lastIndexOf(entry.getKey());
-				}
+	/**
+	 * Get the value for a key as a boolean, true/false, yes/no, on/off and 1/0
+	 * are accepted in any case
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @param defaultValue
+	 *            Value returned when the key is not present or its value is
+	 *            empty
+	 * @return boolean value of the key
+	 * @throws IllegalArgumentException
+	 *             if the value is not a valid boolean
+	 */
+	public boolean getBoolean(String sectionName, String keyName, boolean defaultValue) {
+		Boolean value = getConverted(sectionName, keyName, ValueConverter.BOOLEAN);
+		return (value != null) ? value : defaultValue;
+	}
 
-				if (j < configLines.size()) {
-					configLines.add(j + 1, newLine);
-				} else {
-					configLines.add(newLine);
-				}
+	/**
+	 * Get the value for a key as a duration, either in ISO-8601 format
+	 * (PT1M30S) or a number with one of the units ms, s, m, h or d (90s), a
+	 * number without a unit is in milliseconds
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @param defaultValue
+	 *            Value returned when the key is not present or its value is
+	 *            empty
+	 * @return Duration value of the key
+	 * @throws IllegalArgumentException
+	 *             if the value is not a valid duration
+	 */
+	public Duration getDuration(String sectionName, String keyName, Duration defaultValue) {
+		Duration value = getConverted(sectionName, keyName, ValueConverter.DURATION);
+		return (value != null) ? value : defaultValue;
+	}
+
+	/**
+	 * Get the value for a key as a list of comma separated items, every item
+	 * is trimmed
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @param defaultValue
+	 *            Value returned when the key is not present or its value is
+	 *            empty
+	 * @return unmodifiable list with the items of the key
+	 */
+	public List<String> getList(String sectionName, String keyName, List<String> defaultValue) {
+		List<String> value = getConverted(sectionName, keyName, ValueConverter.LIST);
+		return (value != null) ? value : defaultValue;
+	}
 
-				entry.getValue().add(newLine);
+	/**
+	 * Get a handle to the value of a key, the section and key are looked up
+	 * once instead of on every read
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @param defaultValue
+	 *            Value returned when the key is not present
+	 * @return ConfigKey for the value of the key
+	 */
+	public ConfigKey<String> bindValue(String sectionName, String keyName, String defaultValue) {
+		return bind(sectionName, keyName, null, defaultValue);
+	}
 
-				save();
+	/**
+	 * Get a handle to the value of a key as an int, see
+	 * {@link #getInt(String, String, int)}
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @param defaultValue
+	 *            Value returned when the key is not present or its value is
+	 *            empty
+	 * @return ConfigKey for the value of the key
+	 */
+	public ConfigKey<Integer> bindInt(String sectionName, String keyName, int defaultValue) {
+		return bind(sectionName, keyName, ValueConverter.INTEGER, defaultValue);
+	}
 
-				return true;
+	/**
+	 * Get a handle to the value of a key as a long, see
+	 * {@link #getLong(String, String, long)}
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @param defaultValue
+	 *            Value returned when the key is not present or its value is
+	 *            empty
+	 * @return ConfigKey for the value of the key
+	 */
+	public ConfigKey<Long> bindLong(String sectionName, String keyName, long defaultValue) {
+		return bind(sectionName, keyName, ValueConverter.LONG, defaultValue);
+	}
+
+	/**
+	 * Get a handle to the value of a key as a boolean, see
+	 * {@link #getBoolean(String, String, boolean)}
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @param defaultValue
+	 *            Value returned when the key is not present or its value is
+	 *            empty
+	 * @return ConfigKey for the value of the key
+	 */
+	public ConfigKey<Boolean> bindBoolean(String sectionName, String keyName, boolean defaultValue) {
+		return bind(sectionName, keyName, ValueConverter.BOOLEAN, defaultValue);
+	}
+
+	/**
+	 * Get a handle to the value of a key as a duration, see
+	 * {@link #getDuration(String, String, Duration)}
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @param defaultValue
+	 *            Value returned when the key is not present or its value is
+	 *            empty
+	 * @return ConfigKey for the value of the key
+	 */
+	public ConfigKey<Duration> bindDuration(String sectionName, String keyName, Duration defaultValue) {
+		return bind(sectionName, keyName, ValueConverter.DURATION, defaultValue);
+	}
+
+	/**
+	 * Get a handle to the value of a key as a list, see
+	 * {@link #getList(String, String, List)}
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @param defaultValue
+	 *            Value returned when the key is not present or its value is
+	 *            empty
+	 * @return ConfigKey for the value of the key
+	 */
+	public ConfigKey<List<String>> bindList(String sectionName, String keyName, List<String> defaultValue) {
+		return bind(sectionName, keyName, ValueConverter.LIST, defaultValue);
+	}
+
+	private <T> ConfigKey<T> bind(String sectionName, String keyName, ValueConverter<T> converter, T defaultValue) {
+		String section = validateNotNull("Section", sectionName).trim();
+		String key = validateNotNullOrEmpty("Key", keyName).trim();
+		return new ConfigKey<T>(this, section, key, converter, defaultValue);
+	}
+
+	/**
+	 * Get the converted value for a key, the value is converted once and kept
+	 * on its line until the line changes
+	 * 
+	 * @return the converted value or null if the key is not present or its
+	 *         value is empty
+	 */
+	private <T> T getConverted(String sectionName, String keyName, ValueConverter<T> converter) {
+		String section = validateNotNull("Section", sectionName).trim();
+		String key = validateNotNullOrEmpty("Key", keyName).trim();
+		countLookup();
+		return current(section).getConverted(section, key, converter);
+	}
+
+	private void countLookup() {
+		ConfigMetricsListener metrics = this.metrics;
+		if (metrics != null) {
+			metrics.count(ConfigMetricsListener.Counter.LOOKUPS, 1);
+		}
+	}
+
+	/**
+	 * Add a new section to the end of the configuration file This will trigger
+	 * a file write, unless a batch of changes was started
+	 * 
+	 * @param sectionName
+	 *            Name of the new section (without square brackets)
+	 * @return true when the section was added or false if it already existed
+	 * @throws IOException
+	 */
+	public boolean addSection(String sectionName) throws IOException {
+		String section = validateNotNull("Section", sectionName).trim();
+		ConfigData working;
+		ConfigData oldData;
+		writeLock.lock();
+		try {
+			working = startChange();
+			if (!working.appendSection(section)) {
+				return false;
 			}
+			oldData = changed(working);
+		} finally {
+			writeLock.unlock();
 		}
-		return false;
+		fireChanges(oldData, working);
+		return true;
+	}
+
+	/**
+	 * Set the value for a key This will trigger a file write, unless a batch of
+	 * changes was started
+	 * 
+	 * @param sectionName
+	 *            Name of the section
+	 * @param itemKey
+	 *            Name of the key
+	 * @param itemValue
+	 *            Value of the key, can be null to set a key without value or
+	 *            empty to set an empty value
+	 * @return boolean true if the value was set or false if it was not set
+	 *         because the section does not exist
+	 * @throws IOException
+	 */
+	public boolean setItem(String sectionName, String itemKey, String itemValue) throws IOException {
+		String section = validateNotNull("Section", sectionName).trim();
+		String key = validateNotNullOrEmpty("Key", itemKey).trim();
+		ConfigData working;
+		ConfigData oldData = null;
+		boolean itemSet;
+		writeLock.lock();
+		try {
+			working = startChange();
+			boolean sectionAdded = working.appendSection(section);
+			itemSet = working.setItem(section, key, itemValue);
+			if (sectionAdded || itemSet) {
+				oldData = changed(working);
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		fireChanges(oldData, working);
+		return itemSet;
+	}
+
+	/**
+	 * Remove a key from a section This will trigger a file write, unless a
+	 * batch of changes was started
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @return boolean true if the key was removed or false if it did not exist
+	 * @throws IOException
+	 */
+	public boolean removeItem(String sectionName, String keyName) throws IOException {
+		String section = validateNotNull("Section", sectionName).trim();
+		String key = validateNotNullOrEmpty("Key", keyName).trim();
+		ConfigData working;
+		ConfigData oldData;
+		writeLock.lock();
+		try {
+			working = startChange();
+			if (!working.removeItem(section, key)) {
+				return false;
+			}
+			oldData = changed(working);
+		} finally {
+			writeLock.unlock();
+		}
+		fireChanges(oldData, working);
+		return true;
+	}
+
+	/**
+	 * Remove a section with all its keys and comments This will trigger a file
+	 * write, unless a batch of changes was started. The default section
+	 * (without a name) can not be removed.
+	 * 
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @return boolean true if the section was removed or false if it did not
+	 *         exist
+	 * @throws IOException
+	 */
+	public boolean removeSection(String sectionName) throws IOException {
+		String section = validateNotNull("Section", sectionName).trim();
+		ConfigData working;
+		ConfigData oldData;
+		writeLock.lock();
+		try {
+			working = startChange();
+			if (!working.removeSection(section)) {
+				return false;
+			}
+			oldData = changed(working);
+		} finally {
+			writeLock.unlock();
+		}
+		fireChanges(oldData, working);
+		return true;
+	}
+
+	/**
+	 * Start a batch of changes<br>
+	 * Until {@link #commit()} or {@link #rollback()} is called, setItem,
+	 * addSection, removeItem and removeSection only change the configuration
+	 * in memory, the file is written once by {@link #commit()}. The changes
+	 * are only visible to the thread that started the batch, changes from
+	 * other threads wait until the batch is finished.
+	 * 
+	 * @throws IllegalStateException
+	 *             if a batch was already started by this thread
+	 */
+	public void beginTransaction() {
+		if (transactionOwner == Thread.currentThread()) {
+			throw new IllegalStateException("Transaction already started");
+		}
+		writeLock.lock();
+		this.pending = this.data.copy();
+		this.dirty = false;
+		this.transactionOwner = Thread.currentThread();
+	}
+
+	/**
+	 * Check if a batch of changes was started
+	 * 
+	 * @return boolean true if this thread started a batch and did not yet
+	 *         commit or roll it back
+	 */
+	public boolean inTransaction() {
+		return transactionOwner == Thread.currentThread();
+	}
+
+	/**
+	 * Finish a batch of changes, the file is written once if anything was
+	 * changed
+	 * 
+	 * @throws IOException
+	 *             if the file can not be written, the changes are discarded
+	 * @throws IllegalStateException
+	 *             if no batch was started
+	 */
+	public void commit() throws IOException {
+		if (transactionOwner != Thread.currentThread()) {
+			throw new IllegalStateException("No transaction started");
+		}
+		ConfigData committed = this.pending;
+		ConfigData oldData = null;
+		try {
+			if (this.dirty) {
+				oldData = saveAndPublish(committed);
+			}
+		} finally {
+			endTransaction();
+		}
+		fireChanges(oldData, committed);
+	}
+
+	/**
+	 * Discard a batch of changes
+	 * 
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if no batch was started
+	 */
+	public void rollback() throws IOException {
+		if (transactionOwner != Thread.currentThread()) {
+			throw new IllegalStateException("No transaction started");
+		}
+		endTransaction();
+	}
+
+	private void endTransaction() {
+		this.transactionOwner = null;
+		this.pending = null;
+		this.dirty = false;
+		writeLock.unlock();
+	}
+
+	/**
+	 * Get the snapshot to change, must be called with the write lock held
+	 */
+	private ConfigData startChange() {
+		if (transactionOwner == Thread.currentThread()) {
+			return this.pending;
+		}
+		return this.data.copy();
+	}
+
+	/**
+	 * Write and publish a changed snapshot, or remember the change until the
+	 * batch is committed. Must be called with the write lock held.
+	 *
+	 * @return the snapshot that was replaced, or null if nothing was published
+	 */
+	private ConfigData changed(ConfigData working) throws IOException {
+		if (transactionOwner == Thread.currentThread()) {
+			this.dirty = true;
+			return null;
+		}
+		return saveAndPublish(working);
+	}
+
+	/**
+	 * Write a changed snapshot and then publish it, so a failed save leaves the
+	 * published snapshot as it is. When the file is saved behind its changes,
+	 * the snapshot is published and left to the background writer. Must be
+	 * called with the write lock held.
+	 *
+	 * @return the snapshot that was replaced
+	 */
+	private ConfigData saveAndPublish(ConfigData working) throws IOException {
+		ConfigWriter writer = this.writer;
+		if (writer == null) {
+			save(working);
+		}
+		ConfigData oldData = this.data;
+		this.data = working;
+		if (writer != null) {
+			writer.markDirty();
+		}
+		return oldData;
+	}
+
+	/**
+	 * Notify the listeners of the differences between two snapshots<br>
+	 * Called after the write lock is released, so a slow listener does not
+	 * hold up other changes, reloads or the background writer.
+	 *
+	 * @param oldData
+	 *            The replaced snapshot, or null if nothing was published
+	 */
+	private void fireChanges(ConfigData oldData, ConfigData newData) {
+		if (oldData == null || listeners.isEmpty()) {
+			return;
+		}
+		ConfigChangeEvent event = oldData.diff(this, newData);
+		if (event.isEmpty()) {
+			return;
+		}
+		for (ConfigChangeListener listener : listeners) {
+			try {
+				listener.configChanged(event);
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Configuration change listener failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Register a listener that is notified of added, changed and removed keys
+	 * 
+	 * @param listener
+	 *            The listener
+	 */
+	public void addChangeListener(ConfigChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener that was registered with
+	 * {@link #addChangeListener(ConfigChangeListener)}
+	 * 
+	 * @param listener
+	 *            The listener
+	 */
+	public void removeChangeListener(ConfigChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Reload the configuration in the background whenever the file changes<br>
+	 * The directory of the file is watched for changes, when the file system
+	 * does not support that the file is polled instead. The file is reloaded
+	 * once it did not change for the debounce period. Reloads that fail keep
+	 * the current configuration.
+	 * 
+	 * @param debounceMillis
+	 *            Time in milliseconds the file must be unchanged before it is
+	 *            reloaded
+	 */
+	public void startWatching(long debounceMillis) {
+		startWatcher(debounceMillis, false);
+	}
+
+	/**
+	 * Reload the configuration in the background whenever the modification
+	 * time or size of the file changes, for file systems that do not report
+	 * changes reliably, such as network shares
+	 * 
+	 * @param intervalMillis
+	 *            Time in milliseconds between two checks of the file
+	 */
+	public void startPolling(long intervalMillis) {
+		startWatcher(intervalMillis, true);
+	}
+
+	private synchronized void startWatcher(long millis, boolean polling) {
+		if (millis <= 0) {
+			throw new IllegalArgumentException("Interval must be positive");
+		}
+		stopWatching();
+		watcher = new ConfigFileWatcher(this, file.toPath(), millis, polling);
+		watcher.start();
+	}
+
+	/**
+	 * Stop reloading the configuration when the file changes
+	 */
+	public synchronized void stopWatching() {
+		if (watcher != null) {
+			watcher.stop();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Check if the file is watched for changes
+	 * 
+	 * @return boolean true if the configuration is reloaded when the file
+	 *         changes
+	 */
+	public synchronized boolean isWatching() {
+		return watcher != null;
+	}
+
+	/**
+	 * Save changes in the background instead of on every change<br>
+	 * Changes are visible to readers at once and mark the file dirty. A
+	 * background thread writes the latest content at most once per interval,
+	 * so many changes within an interval are written by a single save. Use
+	 * flush() to wait until the changes are in the file. The pending changes
+	 * are saved before a load, when write-behind is stopped and when the JVM
+	 * shuts down.
+	 * 
+	 * @param intervalMillis
+	 *            Minimum time in milliseconds between two saves
+	 */
+	public synchronized void startWriteBehind(long intervalMillis) {
+		if (intervalMillis <= 0) {
+			throw new IllegalArgumentException("Interval must be positive");
+		}
+		stopWriteBehind();
+		ConfigWriter writer = new ConfigWriter(this, file.getName(), intervalMillis);
+		writer.start();
+		this.writer = writer;
+	}
+
+	/**
+	 * Save the pending changes and save every change again before it returns
+	 * 
+	 * @throws IllegalStateException
+	 *             if this thread started a batch of changes
+	 */
+	public synchronized void stopWriteBehind() {
+		if (inTransaction()) {
+			throw new IllegalStateException("Write-behind can not be stopped in a transaction");
+		}
+		ConfigWriter writer = this.writer;
+		if (writer != null) {
+			// changes from now on are saved by the changing thread
+			writeLock.lock();
+			try {
+				this.writer = null;
+			} finally {
+				writeLock.unlock();
+			}
+			writer.stop();
+		}
+	}
+
+	/**
+	 * Check if changes are saved in the background
+	 * 
+	 * @return boolean true if changes are saved behind
+	 */
+	public synchronized boolean isWriteBehind() {
+		return writer != null;
+	}
+
+	/**
+	 * Save the changes that were not saved yet without waiting for the
+	 * write-behind interval
+	 * 
+	 * @return a future that completes when every change made before the call
+	 *         is in the file, or completes exceptionally with the IOException
+	 *         of a failed save. Without write-behind every change is already
+	 *         saved and the future is complete.
+	 */
+	public CompletableFuture<Void> flush() {
+		ConfigWriter writer = this.writer;
+		if (writer == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return writer.flush();
+	}
+
+	/**
+	 * Get the state of the file after the last load or save
+	 */
+	ConfigFileWatcher.FileState getFileState() {
+		return this.fileState;
+	}
+
+	/**
+	 * Get the state of the file after the last save and forget it, so the
+	 * watcher skips the change of a save only once
+	 * 
+	 * @return the state or null if the file was not saved since the last load
+	 *         or since the state was taken
+	 */
+	ConfigFileWatcher.FileState takeSavedState() {
+		return SAVED_STATE.getAndSet(this, null);
 	}
 
 }
 
+/**
+ * A single line of a configuration file<br>
+ * The line is kept as one String, the data part with the key and value and the
+ * comment part are found by their offsets in it. The key, value and comment
+ * Strings are only created when they are asked for.
+ */
 class ConfigLine {
-	private String data = null;
-	private String comment = null;
-	private String key = null;
-	private String value = null;
+	private String line;
+	private int dataEnd;
+	private int separator;
+	private boolean noData;
 	private String section = null;
+	private String template = null;
+	private volatile Converted converted = null;
+
+	/**
+	 * Create a copy of a line, used to change a line that may be in use by
+	 * readers
+	 */
+	public ConfigLine(ConfigLine source) {
+		this.line = source.line;
+		this.dataEnd = source.dataEnd;
+		this.separator = source.separator;
+		this.noData = source.noData;
+		this.section = source.section;
+		this.template = source.template;
+	}
 
 	public ConfigLine(String line) {
-		Pattern commentPattern = Pattern.compile(".*?([;#!]+).*?");
-		Matcher matcher = commentPattern.matcher(line);
-		while (matcher.find()) {
-			if (matcher.start(1) == 0) {
-				setData(null);
-				setComment(line);
-				return;
+		this.line = line;
+
+		// scan for the start of each run of comment characters, a run only
+		// starts a comment at the beginning of the line, after whitespace
+		// only, or when it is preceded by a space
+		boolean blank = true;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (isCommentChar(c) && (i == 0 || !isCommentChar(line.charAt(i - 1)))) {
+				if (blank) {
+					// line starts with a comment
+					this.noData = true;
+					setDataEnd(0);
+					return;
+				} else if (line.charAt(i - 1) == ' ') {
+					// line contains a comment preceded by whitespace
+					setDataEnd(i - 1);
+					return;
+				}
 			}
-
-			String part1 = line.substring(0, matcher.start(1));
-			String part2 = line.substring(matcher.start(1));
-
-			if (part1.trim().isEmpty()) {
-				// line starts with a comment
-				setData(null);
-				setComment(line);
-				return;
-			} else if (part1.endsWith(" ")) {
-				// line contains a comment preceded by whitespace
-				setData(part1.substring(0, part1.length() - 1));
-				setComment(" " + part2);
-				return;
+			if (c > ' ') {
+				blank = false;
 			}
-
 		}
 
-		setData(line);
+		setDataEnd(line.length());
 
 	}
 
+	private static boolean isCommentChar(char c) {
+		return c == ';' || c == '#' || c == '!';
+	}
+
+	private void setDataEnd(int dataEnd) {
+		this.dataEnd = dataEnd;
+		int i = noData ? -1 : line.indexOf('=');
+		this.separator = (i < dataEnd) ? i : -1;
+	}
+
 	public void setSection(String section) {
 		this.section = section;
 	}
@@ -622,59 +1623,153 @@ class ConfigLine {
 	}
 
 	protected void setData(String data) {
-		this.data = data;
-		parseData();
+		String comment = getComment();
+		this.noData = (data == null);
+		this.line = (noData ? "" : data) + (comment != null ? comment : "");
+		this.template = null;
+		this.converted = null;
+		setDataEnd(noData ? 0 : data.length());
 	}
 
-	public String getData() {
-		return this.data;
+	/**
+	 * Replace the value of a key line with its resolved value, keeping the key
+	 * part as it is and remembering the line as it was read
+	 */
+	protected void setValue(String value) {
+		String rawLine = getRawLine();
+		setData(line.substring(0, separator + 1) + value);
+		this.template = rawLine;
 	}
 
-	public boolean hasData() {
-		return (this.data != null && !this.data.trim().isEmpty());
+	/**
+	 * Get the line as it was read, before placeholders were replaced
+	 */
+	public String getRawLine() {
+		return (this.template != null) ? this.template : this.line;
+	}
+
+	public String getData() {
+		return noData ? null : line.substring(0, dataEnd);
 	}
 
-	public void setComment(String comment) {
-		this.comment = comment;
+	public boolean hasData() {
+		for (int i = 0; i < dataEnd; i++) {
+			if (line.charAt(i) > ' ') {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	public String getComment() {
-		return this.comment;
+		return hasComment() ? line.substring(dataEnd) : null;
 	}
 
 	public boolean hasComment() {
-		return (this.comment != null);
+		return (this.dataEnd < this.line.length());
 	}
 
-	private void parseData() {
-		if (data == null) {
-			key = null;
-			value = null;
-			return;
+	public String getKey() {
+		if (noData) {
+			return null;
 		}
+		return line.substring(0, (separator != -1) ? separator : dataEnd).trim();
+	}
 
-		String[] parts = data.split("=", 2);
-		if (parts.length == 1) {
-			key = data.trim();
-			value = null;
-			return;
+	public String getValue() {
+		return (separator != -1) ? line.substring(separator + 1, dataEnd) : null;
+	}
+
+	/**
+	 * Check if the line has a value that is not empty or whitespace only
+	 */
+	public boolean hasValue() {
+		if (separator == -1) {
+			return false;
 		}
+		for (int i = separator + 1; i < dataEnd; i++) {
+			if (line.charAt(i) > ' ') {
+				return true;
+			}
+		}
+		return false;
+	}
 
-		key = parts[0].trim();
-		value = parts[1];
+	/**
+	 * Get the value converted to a type, the converted value is kept per
+	 * converter until the data of the line changes
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the value can not be converted
+	 */
+	<T> T getConverted(ValueConverter<T> converter) {
+		return getConverted(converter, null);
+	}
 
+	/**
+	 * Get a resolved value of the line converted to a type, the converted value
+	 * is kept per converter until the line is resolved to another value
+	 *
+	 * @param resolved
+	 *            The trimmed resolved value, or null to convert the value of
+	 *            the line
+	 * @throws IllegalArgumentException
+	 *             if the value can not be converted
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T getConverted(ValueConverter<T> converter, String resolved) {
+		Converted first = this.converted;
+		for (Converted c = first; c != null; c = c.next) {
+			if (c.converter == converter) {
+				if (resolved == null ? c.source == null : resolved.equals(c.source)) {
+					return (T) c.result;
+				}
+				break;
+			}
+		}
+		T result = converter.convert((resolved != null) ? resolved : getValue().trim());
+
+		// the list is replaced, not changed, readers may be walking it
+		Converted list = new Converted(converter, resolved, result, null);
+		Converted last = list;
+		for (Converted c = first; c != null; c = c.next) {
+			if (c.converter != converter) {
+				last.next = new Converted(c.converter, c.source, c.result, null);
+				last = last.next;
+			}
+		}
+		this.converted = list;
+		return result;
 	}
 
-	public String getKey() {
-		return key;
+	public String getLine() {
+		return this.line;
 	}
 
-	public String getValue() {
-		return value;
+	public int getLineLength() {
+		return this.line.length();
 	}
 
-	public String getLine() {
-		return (this.data != null ? getData() : "") + (hasComment() ? getComment() : "");
+	public void appendLine(StringBuilder sb) {
+		sb.append(this.line);
+	}
+
+	/**
+	 * A converted value with the converter that created it and the resolved
+	 * value it was converted from, linked to the values of other converters
+	 */
+	private static final class Converted {
+		private final ValueConverter<?> converter;
+		private final String source;
+		private final Object result;
+		private Converted next;
+
+		Converted(ValueConverter<?> converter, String source, Object result, Converted next) {
+			this.converter = converter;
+			this.source = source;
+			this.result = result;
+			this.next = next;
+		}
 	}
 
 }
@@ -0,0 +1,192 @@
+package nl.arudos.jconfigfile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Several configuration files stacked on top of each other, for example a base
+ * file, an environment file and a host specific file<br>
+ * A key is taken from the last layer that has it, so later layers override
+ * earlier ones. The merged keys of all layers are kept in a single hash table,
+ * so a lookup is a single probe however many layers there are. When a layer is
+ * loaded or changed, only the keys of that change are looked up again in the
+ * layers.<br>
+ * <br>
+ * Instances are thread safe. Call {@link #close()} to stop following the
+ * changes of the layers.
+ *
+ * @author Rudo Peters
+ *
+ */
+public final class LayeredConfig implements AutoCloseable {
+	private final List<JConfigFile> layers;
+	private final Map<String, Entry> merged = new ConcurrentHashMap<String, Entry>();
+	private final ConfigChangeListener listener = this::layerChanged;
+
+	/**
+	 * Stack configuration files
+	 *
+	 * @param layers
+	 *            The configuration files, from the lowest to the highest
+	 *            priority
+	 */
+	public LayeredConfig(JConfigFile... layers) {
+		this(Arrays.asList(layers));
+	}
+
+	/**
+	 * Stack configuration files
+	 *
+	 * @param layers
+	 *            The configuration files, from the lowest to the highest
+	 *            priority
+	 */
+	public LayeredConfig(List<JConfigFile> layers) {
+		if (layers == null || layers.isEmpty()) {
+			throw new IllegalArgumentException("Layers must not be empty");
+		}
+		if (layers.contains(null)) {
+			throw new IllegalArgumentException("Layer must not be null");
+		}
+		this.layers = Collections.unmodifiableList(new ArrayList<JConfigFile>(layers));
+		synchronized (this) {
+			// changes made while the view is built are applied after it
+			for (JConfigFile layer : this.layers) {
+				layer.addChangeListener(listener);
+			}
+			for (int i = 0; i < this.layers.size(); i++) {
+				JConfigFile layer = this.layers.get(i);
+				for (String section : layer.getSections()) {
+					for (String key : layer.getKeys(section)) {
+						merged.put(ConfigData.nodeName(section, key), new Entry(layer.getValue(section, key), i));
+					}
+				}
+			}
+		}
+	}
+
+	private synchronized void layerChanged(ConfigChangeEvent event) {
+		for (List<ConfigChange> changes : Arrays.asList(event.getAdded(), event.getChanged(), event.getRemoved())) {
+			for (ConfigChange change : changes) {
+				update(change.getSection(), change.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Look up a key in the layers again, from the highest priority down
+	 */
+	private void update(String section, String key) {
+		String node = ConfigData.nodeName(section, key);
+		for (int i = layers.size() - 1; i >= 0; i--) {
+			JConfigFile layer = layers.get(i);
+			if (layer.hasKey(section, key)) {
+				merged.put(node, new Entry(layer.getValue(section, key), i));
+				return;
+			}
+		}
+		merged.remove(node);
+	}
+
+	private static String validateNotNull(String field, String value) {
+		if (value == null) {
+			throw new IllegalArgumentException(String.format("%s must not be null", field));
+		}
+		return value;
+	}
+
+	private static String validateNotNullOrEmpty(String field, String value) {
+		if (validateNotNull(field, value).trim().isEmpty()) {
+			throw new IllegalArgumentException(String.format("%s must not be empty", field));
+		}
+		return value;
+	}
+
+	private Entry find(String sectionName, String keyName) {
+		String section = validateNotNull("Section", sectionName).trim();
+		String key = validateNotNullOrEmpty("Key", keyName).trim();
+		return merged.get(ConfigData.nodeName(section, key));
+	}
+
+	/**
+	 * Get the layers
+	 *
+	 * @return List of configuration files, from the lowest to the highest
+	 *         priority
+	 */
+	public List<JConfigFile> getLayers() {
+		return layers;
+	}
+
+	/**
+	 * Check if a certain key exists in a section of any layer
+	 *
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @return boolean true if the key exists, false if it does not exist
+	 */
+	public boolean hasKey(String sectionName, String keyName) {
+		return find(sectionName, keyName) != null;
+	}
+
+	/**
+	 * Get the value for a key from the layer with the highest priority that has
+	 * the key
+	 *
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @return String value of the key or null if the key is not present or has
+	 *         no value
+	 */
+	public String getValue(String sectionName, String keyName) {
+		Entry entry = find(sectionName, keyName);
+		return (entry != null) ? entry.value : null;
+	}
+
+	/**
+	 * Get the layer a key is taken from
+	 *
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @return JConfigFile the layer or null if the key is not present
+	 */
+	public JConfigFile getLayer(String sectionName, String keyName) {
+		Entry entry = find(sectionName, keyName);
+		return (entry != null) ? layers.get(entry.layer) : null;
+	}
+
+	/**
+	 * Stop following the changes of the layers, the merged view keeps the keys
+	 * it has
+	 */
+	@Override
+	public void close() {
+		for (JConfigFile layer : layers) {
+			layer.removeChangeListener(listener);
+		}
+	}
+
+	/**
+	 * A key of the merged view with the layer it is taken from
+	 */
+	private static final class Entry {
+		private final String value;
+		private final int layer;
+
+		Entry(String value, int layer) {
+			this.value = value;
+			this.layer = layer;
+		}
+	}
+
+}
@@ -0,0 +1,599 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Read-only view of a configuration file that stays in a memory mapped
+ * buffer<br>
+ * The file is mapped once and indexed: the positions of every section and key
+ * are kept in off-heap tables, nothing of the file itself is copied onto the
+ * heap. Names and values are decoded from the mapped bytes when they are asked
+ * for. Because the operating system shares the mapped pages, processes that
+ * map the same file share a single copy of it.<br>
+ * <br>
+ * Sections, keys and comments follow the same rules as in {@link JConfigFile}.
+ * Values are returned as they are in the file, placeholders are not resolved.
+ * Only UTF-8, UTF-16, UTF-32 and single byte encodings that encode the
+ * characters of the file structure as ASCII can be mapped. Changes to the file
+ * after it was mapped are not supported, create a new instance to read a
+ * changed file. The file must not be truncated while it is mapped: reading a
+ * part of the mapping that is no longer in the file fails with an
+ * InternalError.<br>
+ * <br>
+ * The mapping lasts until {@link #close()} is called or the instance is
+ * garbage collected. While it lasts, some platforms, such as Windows, can not
+ * replace or delete the file.<br>
+ * <br>
+ * Instances are thread safe, but must not be closed while other threads still
+ * read from them.
+ *
+ * @author Rudo Peters
+ *
+ */
+public final class MappedConfigFile implements AutoCloseable {
+	private static final int SECTION_FIELDS = 3;
+	private static final int KEY_FIELDS = 5;
+
+	private final ByteBuffer buffer;
+	private final Charset charset;
+	private final boolean bom;
+	private final int unitWidth;
+	private final boolean bigEndian;
+
+	// per section: start and end of the name, first key
+	private final IntBuffer sections;
+	private final int sectionCount;
+	// per key: start and end of the key, start and end of the value, section
+	private final IntBuffer keys;
+	private final int keyCount;
+	private final IntBuffer sectionTable;
+	private final IntBuffer keyTable;
+	private volatile boolean closed = false;
+
+	/**
+	 * Map and index a configuration file, the character encoding is detected
+	 *
+	 * @param file
+	 *            The configuration File
+	 * @throws IOException
+	 */
+	public MappedConfigFile(File file) throws IOException {
+		this(file, null);
+	}
+
+	/**
+	 * Map and index a configuration file with the supplied character encoding
+	 *
+	 * @param file
+	 *            The configuration File
+	 * @param encoding
+	 *            The file encoding, for example Cp1252 (a.k.a ANSI), UTF-8,
+	 *            etc, or null to attempt auto detection of the encoding
+	 * @throws IOException
+	 */
+	public MappedConfigFile(File file, String encoding) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("File must not be null");
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			this.buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		Charset detected = JConfigFile
+				.detectCharset(buffer, (encoding != null) ? Charset.forName(encoding) : null);
+		this.charset = withoutBOM(detected);
+		this.unitWidth = unitWidth(charset);
+		this.bigEndian = !charset.name().endsWith("LE");
+		int bomLength = (unitWidth == 1) ? 3 : unitWidth;
+		if (unitWidth == 1) {
+			this.bom = charset.name().equals("UTF-8") && buffer.limit() >= bomLength
+					&& unit(0) == 0xEF && unit(1) == 0xBB && unit(2) == 0xBF;
+		} else {
+			this.bom = buffer.limit() >= bomLength && unit(0) == ConfigData.BOM_CHAR;
+		}
+
+		Indexer indexer = new Indexer();
+		indexer.index(bom ? bomLength : 0);
+		this.sections = indexer.sections;
+		this.sectionCount = indexer.sectionCount;
+		this.keys = indexer.keys;
+		this.keyCount = indexer.keyCount;
+		this.sectionTable = indexer.sectionTable;
+		this.keyTable = indexer.keyTable;
+	}
+
+	/**
+	 * Get the Charset that decodes the file after its BOM
+	 */
+	private static Charset withoutBOM(Charset charset) {
+		switch (charset.name().toUpperCase(Locale.ROOT)) {
+		case "UTF-16":
+			return Charset.forName("UTF-16BE");
+		case "X-UTF-16LE-BOM":
+			return Charset.forName("UTF-16LE");
+		case "UTF-32":
+		case "X-UTF-32BE-BOM":
+			return Charset.forName("UTF-32BE");
+		case "X-UTF-32LE-BOM":
+			return Charset.forName("UTF-32LE");
+		default:
+			return charset;
+		}
+	}
+
+	/**
+	 * Get the number of bytes of a code unit, in which the characters that
+	 * structure the file are encoded as their ASCII value
+	 */
+	private static int unitWidth(Charset charset) {
+		String name = charset.name();
+		if (name.startsWith("UTF-16")) {
+			return 2;
+		}
+		if (name.startsWith("UTF-32")) {
+			return 4;
+		}
+		CharsetEncoder encoder = charset.newEncoder();
+		if (name.equals("UTF-8") || encoder.maxBytesPerChar() == 1) {
+			// the structure characters must keep their ASCII value, which
+			// rules out EBCDIC and other single byte encodings
+			String probe = "\r\n\t []=;#!${}";
+			if (encoder.canEncode(probe) && isAscii(charset.encode(probe), probe)) {
+				return 1;
+			}
+		}
+		throw new IllegalArgumentException(
+				String.format("Charset '%s' is not supported for memory mapped files", name));
+	}
+
+	private static boolean isAscii(ByteBuffer encoded, String probe) {
+		if (encoded.remaining() != probe.length()) {
+			return false;
+		}
+		for (int i = 0; i < probe.length(); i++) {
+			if (encoded.get(encoded.position() + i) != probe.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the code unit at a position, multi-byte characters consist of units
+	 * that never have an ASCII value
+	 */
+	private int unit(int position) {
+		switch (unitWidth) {
+		case 1:
+			return buffer.get(position) & 0xFF;
+		case 2:
+			return bigEndian ? buffer.getChar(position)
+					: ((buffer.get(position + 1) & 0xFF) << 8) | (buffer.get(position) & 0xFF);
+		default:
+			int value = bigEndian ? buffer.getInt(position)
+					: ((buffer.get(position + 3) & 0xFF) << 24) | ((buffer.get(position + 2) & 0xFF) << 16)
+							| ((buffer.get(position + 1) & 0xFF) << 8) | (buffer.get(position) & 0xFF);
+			return (value >= 0) ? value : Integer.MAX_VALUE;
+		}
+	}
+
+	private String decode(int start, int end) {
+		ByteBuffer part = buffer.duplicate();
+		part.limit(end).position(start);
+		return charset.decode(part).toString();
+	}
+
+	private static boolean isCommentChar(int c) {
+		return c == ';' || c == '#' || c == '!';
+	}
+
+	private static int hash(String foldedName) {
+		int h = foldedName.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static int keyHash(int section, String foldedKey) {
+		return hash(foldedKey) * 31 + section;
+	}
+
+	private static IntBuffer allocate(int ints) {
+		return ByteBuffer.allocateDirect(ints * 4).asIntBuffer();
+	}
+
+	private static int tableSize(int count) {
+		int size = 16;
+		while (size < count * 2) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	/**
+	 * Builds the section and key tables in a single pass over the file
+	 */
+	private final class Indexer {
+		private IntBuffer sections = allocate(16 * SECTION_FIELDS);
+		private int sectionCount = 0;
+		private IntBuffer keys = allocate(1024 * KEY_FIELDS);
+		private int keyCount = 0;
+		private IntBuffer sectionTable;
+		private IntBuffer keyTable;
+
+		void index(int start) {
+			// the default section has no name
+			addSection(-1, -1);
+			sectionTable = allocate(tableSize(1) * 2);
+			insert(sectionTable, hash(""), 0);
+
+			int end = buffer.limit();
+			int pos = start;
+			while (pos < end) {
+				int lineEnd = pos;
+				while (lineEnd < end && unit(lineEnd) != '\r' && unit(lineEnd) != '\n') {
+					lineEnd += unitWidth;
+				}
+				indexLine(pos, lineEnd);
+				pos = lineEnd;
+				if (pos < end && unit(pos) == '\r') {
+					pos += unitWidth;
+				}
+				if (pos < end && unit(pos) == '\n' && (pos == lineEnd || unit(lineEnd) == '\r')) {
+					pos += unitWidth;
+				}
+			}
+
+			keyTable = allocate(tableSize(keyCount) * 2);
+			for (int i = 0; i < keyCount; i++) {
+				int section = keys.get(i * KEY_FIELDS + 4);
+				String key = ConfigData.fold(decode(keys.get(i * KEY_FIELDS), keys.get(i * KEY_FIELDS + 1)));
+				int hash = keyHash(section, key);
+				if (findKey(keyTable, keys, section, key, hash) != -1) {
+					throw new IllegalArgumentException(String.format("Duplicate key '%s' in section '%s'",
+							decode(keys.get(i * KEY_FIELDS), keys.get(i * KEY_FIELDS + 1)),
+							sectionName(sections, section)));
+				}
+				insert(keyTable, hash, i);
+			}
+		}
+
+		private void indexLine(int start, int end) {
+			// find the end of the data part with the same rules as ConfigLine
+			int dataEnd = end;
+			boolean blank = true;
+			for (int i = start; i < end; i += unitWidth) {
+				int c = unit(i);
+				if (isCommentChar(c) && (i == start || !isCommentChar(unit(i - unitWidth)))) {
+					if (blank) {
+						return;
+					} else if (unit(i - unitWidth) == ' ') {
+						dataEnd = i - unitWidth;
+						break;
+					}
+				}
+				if (c > ' ') {
+					blank = false;
+				}
+			}
+			if (blank) {
+				return;
+			}
+
+			int first = start;
+			while (unit(first) <= ' ') {
+				first += unitWidth;
+			}
+			if (unit(first) == '[') {
+				String name = ConfigData.sectionName(decode(start, dataEnd));
+				if (name != null) {
+					addNamedSection(name, start, dataEnd);
+					return;
+				}
+			}
+
+			int separator = -1;
+			for (int i = start; i < dataEnd; i += unitWidth) {
+				if (unit(i) == '=') {
+					separator = i;
+					break;
+				}
+			}
+			int keyStart = start;
+			int keyEnd = (separator != -1) ? separator : dataEnd;
+			while (keyStart < keyEnd && unit(keyStart) <= ' ') {
+				keyStart += unitWidth;
+			}
+			while (keyEnd > keyStart && unit(keyEnd - unitWidth) <= ' ') {
+				keyEnd -= unitWidth;
+			}
+
+			if ((keyCount + 1) * KEY_FIELDS > keys.capacity()) {
+				keys = grow(keys);
+			}
+			int at = keyCount * KEY_FIELDS;
+			keys.put(at, keyStart);
+			keys.put(at + 1, keyEnd);
+			keys.put(at + 2, (separator != -1) ? separator + unitWidth : -1);
+			keys.put(at + 3, (separator != -1) ? dataEnd : -1);
+			keys.put(at + 4, sectionCount - 1);
+			keyCount++;
+		}
+
+		private void addNamedSection(String name, int start, int end) {
+			String folded = ConfigData.fold(name);
+			if (findSection(sectionTable, sections, folded) != -1) {
+				throw new IllegalArgumentException(String.format("Duplicate section '%s'", name));
+			}
+			addSection(start, end);
+			if (sectionCount * 4 > sectionTable.capacity()) {
+				IntBuffer table = allocate(tableSize(sectionCount) * 2);
+				for (int i = 0; i < sectionCount - 1; i++) {
+					insert(table, hash(ConfigData.fold(sectionName(sections, i))), i);
+				}
+				sectionTable = table;
+			}
+			insert(sectionTable, hash(folded), sectionCount - 1);
+		}
+
+		private void addSection(int start, int end) {
+			if ((sectionCount + 1) * SECTION_FIELDS > sections.capacity()) {
+				sections = grow(sections);
+			}
+			int at = sectionCount * SECTION_FIELDS;
+			sections.put(at, start);
+			sections.put(at + 1, end);
+			sections.put(at + 2, keyCount);
+			sectionCount++;
+		}
+
+		private IntBuffer grow(IntBuffer source) {
+			IntBuffer target = allocate(source.capacity() * 2);
+			source.clear();
+			target.put(source);
+			return target;
+		}
+
+		private void insert(IntBuffer table, int hash, int value) {
+			int mask = table.capacity() / 2 - 1;
+			int slot = hash & mask;
+			while (table.get(slot * 2 + 1) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table.put(slot * 2, hash);
+			table.put(slot * 2 + 1, value + 1);
+		}
+	}
+
+	/**
+	 * Get the name of a section
+	 */
+	private String sectionName(IntBuffer sections, int section) {
+		int start = sections.get(section * SECTION_FIELDS);
+		if (start == -1) {
+			return "";
+		}
+		return ConfigData.sectionName(decode(start, sections.get(section * SECTION_FIELDS + 1)));
+	}
+
+	/**
+	 * Find a section in a table
+	 *
+	 * @return the number of the section or -1 if it is not present
+	 */
+	private int findSection(IntBuffer table, IntBuffer sections, String folded) {
+		int hash = hash(folded);
+		int mask = table.capacity() / 2 - 1;
+		for (int slot = hash & mask; table.get(slot * 2 + 1) != 0; slot = (slot + 1) & mask) {
+			int section = table.get(slot * 2 + 1) - 1;
+			if (table.get(slot * 2) == hash && ConfigData.fold(sectionName(sections, section)).equals(folded)) {
+				return section;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Find a key in a table
+	 *
+	 * @return the number of the key or -1 if it is not present
+	 */
+	private int findKey(IntBuffer table, IntBuffer keys, int section, String folded, int hash) {
+		int mask = table.capacity() / 2 - 1;
+		for (int slot = hash & mask; table.get(slot * 2 + 1) != 0; slot = (slot + 1) & mask) {
+			int key = table.get(slot * 2 + 1) - 1;
+			if (table.get(slot * 2) == hash && keys.get(key * KEY_FIELDS + 4) == section && ConfigData
+					.fold(decode(keys.get(key * KEY_FIELDS), keys.get(key * KEY_FIELDS + 1))).equals(folded)) {
+				return key;
+			}
+		}
+		return -1;
+	}
+
+	private int findKey(String sectionName, String keyName) {
+		int section = findSection(sectionTable, sections, ConfigData.fold(sectionName.trim()));
+		if (section == -1) {
+			return -1;
+		}
+		String folded = ConfigData.fold(keyName.trim());
+		return findKey(keyTable, keys, section, folded, keyHash(section, folded));
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Mapped file is closed");
+		}
+	}
+
+	/**
+	 * Unmap the file, no thread may read from this instance any more<br>
+	 * When the Java runtime does not allow unmapping, the mapping is left to
+	 * the garbage collector. Calling close() again has no effect.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		unmap(buffer);
+	}
+
+	/**
+	 * Release a mapped buffer without waiting for the garbage collector
+	 */
+	private static void unmap(ByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			try {
+				// Java 9 and later
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			} catch (NoSuchMethodException e) {
+				// Java 8
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// the mapping is released when the buffer is garbage collected
+		}
+	}
+
+	private static String validateNotNull(String field, String value) {
+		if (value == null) {
+			throw new IllegalArgumentException(String.format("%s must not be null", field));
+		}
+		return value;
+	}
+
+	private static String validateNotNullOrEmpty(String field, String value) {
+		if (validateNotNull(field, value).trim().isEmpty()) {
+			throw new IllegalArgumentException(String.format("%s must not be empty", field));
+		}
+		return value;
+	}
+
+	/**
+	 * Get the Charset
+	 *
+	 * @return Charset
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Check if the file starts with a byte order mark
+	 *
+	 * @return boolean true if the file has a BOM
+	 */
+	public boolean hasBOM() {
+		return bom;
+	}
+
+	/**
+	 * Get a list of all sections
+	 *
+	 * @return List of sections
+	 */
+	public List<String> getSections() {
+		checkOpen();
+		List<String> names = new ArrayList<String>(sectionCount);
+		for (int i = 0; i < sectionCount; i++) {
+			names.add(sectionName(sections, i));
+		}
+		return names;
+	}
+
+	/**
+	 * Check if a section exists
+	 *
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @return boolean true if the section exists, false otherwise
+	 */
+	public boolean hasSection(String sectionName) {
+		String section = validateNotNull("Section", sectionName).trim();
+		checkOpen();
+		return findSection(sectionTable, sections, ConfigData.fold(section)) != -1;
+	}
+
+	/**
+	 * Get a list of all keys in a section
+	 *
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @return List of all keys in the section
+	 */
+	public List<String> getKeys(String sectionName) {
+		String section = validateNotNull("Section", sectionName).trim();
+		checkOpen();
+		List<String> names = new ArrayList<String>();
+		int index = findSection(sectionTable, sections, ConfigData.fold(section));
+		if (index != -1) {
+			int first = sections.get(index * SECTION_FIELDS + 2);
+			int last = (index + 1 < sectionCount) ? sections.get((index + 1) * SECTION_FIELDS + 2) : keyCount;
+			for (int i = first; i < last; i++) {
+				names.add(decode(keys.get(i * KEY_FIELDS), keys.get(i * KEY_FIELDS + 1)));
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Check if a certain key exists in a section
+	 *
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @return boolean true if the key exists, false if it does not exist
+	 */
+	public boolean hasKey(String sectionName, String keyName) {
+		validateNotNull("Section", sectionName);
+		validateNotNullOrEmpty("Key", keyName);
+		checkOpen();
+		return findKey(sectionName, keyName) != -1;
+	}
+
+	/**
+	 * Get the value for a key, decoded from the mapped file
+	 *
+	 * @param sectionName
+	 *            Name of the section (without square brackets)
+	 * @param keyName
+	 *            Name of the key
+	 * @return String value of the key or null if the key is not present or has
+	 *         no value
+	 */
+	public String getValue(String sectionName, String keyName) {
+		validateNotNull("Section", sectionName);
+		validateNotNullOrEmpty("Key", keyName);
+		checkOpen();
+		int key = findKey(sectionName, keyName);
+		if (key == -1 || keys.get(key * KEY_FIELDS + 2) == -1) {
+			return null;
+		}
+		return decode(keys.get(key * KEY_FIELDS + 2), keys.get(key * KEY_FIELDS + 3));
+	}
+
+}
@@ -0,0 +1,378 @@
+package nl.arudos.jconfigfile;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the ${...} placeholders in the values of a configuration file<br>
+ * Every key is a node of a reference graph, the ${[section]:key} placeholders
+ * are its edges. The keys are resolved depth first, so a referenced key is
+ * always resolved before the keys that refer to it and every key is resolved
+ * exactly once. A reference cycle is reported as an error.<br>
+ * <br>
+ * Placeholders that cannot be resolved are left in the value as they are. The
+ * keys that each value refers to are recorded in the {@link ConfigData}, so a
+ * later reload can find the values that depend on a changed key. A value that
+ * is looked up in the property source or evaluated by a script that is not
+ * pure refers to {@link ConfigData#EXTERNAL}.<br>
+ * <br>
+ * Keys of other files of a {@link ConfigRegistry} are referred to as
+ * ${name:[section]:key}. These placeholders are resolved in a separate pass
+ * once the other files are loaded, which does not record references. That
+ * pass replaces the lines it changes instead of changing them, so it can
+ * resolve a copy of a published snapshot.<br>
+ * <br>
+ * When placeholders are resolved lazily the lines keep their raw values and a
+ * single key is resolved when it is read, its result is remembered in a map
+ * that outlives the resolver.
+ *
+ * @author Rudo Peters
+ *
+ */
+class PlaceholderResolver {
+	private static final String START = "${";
+	private static final String SCRIPT_START = "!-";
+	private static final String SCRIPT_END = "-!";
+	private static final Pattern REFERENCE_PATTERN = Pattern.compile("^\\[(.*)\\]:(.*?)$");
+	private static final Pattern FILE_REFERENCE_PATTERN = Pattern.compile("^([^\\[:]+):\\[(.*)\\]:(.*?)$");
+
+	private final ConfigData configData;
+	private final Map<ConfigLine, String> targets;
+	private final Map<String, ConfigData> files;
+	private final ArrayDeque<Set<String>> references = new ArrayDeque<Set<String>>();
+	private final Map<ConfigLine, String> resolved;
+	private final boolean inPlace;
+	private final Map<ConfigLine, String> path = new LinkedHashMap<ConfigLine, String>();
+	private final Map<String, String> scriptResults = new HashMap<String, String>();
+	private boolean changed = false;
+
+	/**
+	 * Create a resolver for all keys
+	 */
+	PlaceholderResolver(ConfigData configData) {
+		this(configData, null);
+	}
+
+	/**
+	 * Create a resolver for some of the keys, the values of all other keys are
+	 * used as they are
+	 *
+	 * @param targets
+	 *            The key lines to resolve with the names of their sections
+	 */
+	PlaceholderResolver(ConfigData configData, Map<ConfigLine, String> targets) {
+		this(configData, targets, null);
+	}
+
+	/**
+	 * Create a resolver for the placeholders that refer to other files
+	 *
+	 * @param files
+	 *            The content of the other files by their name
+	 */
+	PlaceholderResolver(ConfigData configData, Map<ConfigLine, String> targets, Map<String, ConfigData> files) {
+		this(configData, targets, files, new HashMap<ConfigLine, String>(), true);
+	}
+
+	private PlaceholderResolver(ConfigData configData, Map<ConfigLine, String> targets,
+			Map<String, ConfigData> files, Map<ConfigLine, String> resolved, boolean inPlace) {
+		this.configData = configData;
+		this.targets = targets;
+		this.files = files;
+		this.resolved = resolved;
+		this.inPlace = inPlace;
+	}
+
+	/**
+	 * Create a resolver that leaves the values in the lines as they are
+	 *
+	 * @param resolved
+	 *            The values that were resolved before, new results are added
+	 */
+	static PlaceholderResolver lazy(ConfigData configData, Map<ConfigLine, String> resolved) {
+		return new PlaceholderResolver(configData, null, null, resolved, false);
+	}
+
+	/**
+	 * Resolve the placeholders of a single key without changing its line
+	 *
+	 * @return the resolved value
+	 */
+	String resolve(String section, ConfigLine configLine) {
+		ConfigMetricsListener metrics = configData.getMetrics();
+		if (metrics == null) {
+			return resolveLine(section, configLine);
+		}
+		long start = System.nanoTime();
+		try {
+			return resolveLine(section, configLine);
+		} finally {
+			metrics.timing(ConfigMetricsListener.Phase.RESOLVE, System.nanoTime() - start);
+			metrics.count(ConfigMetricsListener.Counter.SUBSTITUTION_PASSES, 1);
+		}
+	}
+
+	/**
+	 * Resolve the placeholders of the keys and store the resolved values in the
+	 * lines
+	 *
+	 * @return true if a value was changed
+	 */
+	boolean resolve() {
+		ConfigMetricsListener metrics = configData.getMetrics();
+		if (metrics == null) {
+			return resolveKeys();
+		}
+		long start = System.nanoTime();
+		try {
+			return resolveKeys();
+		} finally {
+			metrics.timing(ConfigMetricsListener.Phase.RESOLVE, System.nanoTime() - start);
+			metrics.count(ConfigMetricsListener.Counter.SUBSTITUTION_PASSES, 1);
+		}
+	}
+
+	private boolean resolveKeys() {
+		if (targets != null) {
+			// sections that are parsed for a reference add their keys to the
+			// targets, after the keys that are already there
+			List<Map.Entry<ConfigLine, String>> entries = new ArrayList<Map.Entry<ConfigLine, String>>(
+					targets.entrySet());
+			for (int i = 0; i < entries.size(); i++) {
+				resolveLine(entries.get(i).getValue(), entries.get(i).getKey());
+				if (i == entries.size() - 1 && entries.size() < targets.size()) {
+					entries = new ArrayList<Map.Entry<ConfigLine, String>>(targets.entrySet());
+				}
+			}
+			return changed;
+		}
+		for (Map.Entry<ConfigLine, ArrayList<ConfigLine>> entry : configData.getSectionMap().entrySet()) {
+			String section = entry.getKey().getSection();
+			for (ConfigLine configLine : entry.getValue()) {
+				resolveLine(section, configLine);
+			}
+		}
+		return changed;
+	}
+
+	private String resolveLine(String section, ConfigLine configLine) {
+		String done = resolved.get(configLine);
+		if (done != null) {
+			return done;
+		}
+		String value = configLine.getValue();
+		if (value == null || value.indexOf(START) == -1
+				|| (targets != null && !targets.containsKey(configLine))) {
+			return value;
+		}
+
+		String name = "[" + section + "]:" + configLine.getKey();
+		if (path.containsKey(configLine)) {
+			StringBuilder cycle = new StringBuilder();
+			for (String node : path.values()) {
+				cycle.append(node).append(" -> ");
+			}
+			throw new IllegalArgumentException(String.format("Circular reference %s%s", cycle, name));
+		}
+
+		path.put(configLine, name);
+		references.push(new HashSet<String>());
+		String result = resolveText(value);
+		Set<String> referenced = references.pop();
+		if (files == null) {
+			configData.setReferences(ConfigData.nodeName(section, configLine.getKey()), referenced);
+		}
+		path.remove(configLine);
+
+		String previous = resolved.putIfAbsent(configLine, result);
+		if (previous != null) {
+			// resolved lazily by another thread in the meantime
+			return previous;
+		}
+		if (inPlace && !result.equals(value)) {
+			if (files != null) {
+				// the line may be shared with a published snapshot
+				ConfigLine newLine = new ConfigLine(configLine);
+				newLine.setValue(result);
+				configData.replaceLine(configData.findSection(section), configLine, newLine);
+			} else {
+				configLine.setValue(result);
+			}
+			changed = true;
+		}
+		return result;
+	}
+
+	/**
+	 * Replace every placeholder in a text, nested placeholders are resolved
+	 * first
+	 */
+	private String resolveText(String text) {
+		int start = text.indexOf(START);
+		if (start == -1) {
+			return text;
+		}
+
+		StringBuilder sb = new StringBuilder(text.length());
+		int pos = 0;
+		while (start != -1) {
+			int end = findEnd(text, start);
+			if (end == -1) {
+				break;
+			}
+			sb.append(text, pos, start);
+			String newValue = resolvePlaceholder(text.substring(start + START.length(), end));
+			if (newValue != null) {
+				sb.append(newValue);
+			} else {
+				sb.append(text, start, end + 1);
+			}
+			pos = end + 1;
+			start = text.indexOf(START, pos);
+		}
+		sb.append(text, pos, text.length());
+		return sb.toString();
+	}
+
+	/**
+	 * Find the closing brace of the placeholder that starts at the given
+	 * position
+	 *
+	 * @return the position of the closing brace or -1 if it is not present
+	 */
+	private int findEnd(String text, int start) {
+		int i = start + START.length();
+		if (text.startsWith(SCRIPT_START, i)) {
+			int end = text.indexOf(SCRIPT_END + "}", i + SCRIPT_START.length());
+			if (end == -1) {
+				if (text.indexOf('}', i) == -1) {
+					return -1;
+				}
+				throw new RuntimeException("JavaScript end tag '-!' not found");
+			}
+			return end + SCRIPT_END.length();
+		}
+		int depth = 0;
+		while (i < text.length()) {
+			if (text.startsWith(START, i)) {
+				depth++;
+				i += START.length();
+				continue;
+			}
+			if (text.charAt(i) == '}') {
+				if (depth == 0) {
+					return i;
+				}
+				depth--;
+			}
+			i++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Resolve the contents of a single placeholder
+	 *
+	 * @return the replacement value or null if the placeholder can not be
+	 *         resolved
+	 */
+	private String resolvePlaceholder(String placeholder) {
+		if (placeholder.startsWith(SCRIPT_START)) {
+			String script = placeholder.substring(SCRIPT_START.length(),
+					placeholder.length() - SCRIPT_END.length());
+			return executeJavascript(resolveText(script));
+		}
+		if (placeholder.endsWith(SCRIPT_END)) {
+			throw new RuntimeException("JavaScript start tag '!-' not found");
+		}
+
+		String propertyName = resolveText(placeholder);
+		if (propertyName.isEmpty()) {
+			return null;
+		}
+
+		String newValue = null;
+		if (files != null) {
+			Matcher matcher = FILE_REFERENCE_PATTERN.matcher(propertyName);
+			if (matcher.matches() && files.containsKey(matcher.group(1).trim())) {
+				ConfigLine target = files.get(matcher.group(1).trim()).findKey(matcher.group(2).trim(),
+						matcher.group(3).trim());
+				return (target != null) ? target.getValue() : null;
+			}
+		}
+		if (propertyName.startsWith("[")) {
+			Matcher matcher = REFERENCE_PATTERN.matcher(propertyName);
+			if (matcher.matches()) {
+				String section = matcher.group(1).trim();
+				String key = matcher.group(2).trim();
+				if (!references.isEmpty()) {
+					references.peek().add(ConfigData.nodeName(section, key));
+				}
+				if (targets != null) {
+					configData.parseReferenced(section, targets);
+				}
+				ConfigLine target = configData.findKey(section, key);
+				if (target != null) {
+					newValue = resolveLine(section, target);
+				}
+			}
+		}
+		if (newValue == null) {
+			referExternal();
+			newValue = configData.getPropertySource().getProperty(propertyName);
+		}
+		return newValue;
+	}
+
+	/**
+	 * Record that the value being resolved depends on something outside the
+	 * file
+	 */
+	private void referExternal() {
+		if (!references.isEmpty()) {
+			references.peek().add(ConfigData.EXTERNAL);
+		}
+	}
+
+	/**
+	 * Evaluate a JavaScript expression, the result of a pure script, an
+	 * expression of literals and arithmetic only, is reused for every
+	 * occurrence of the same script in the resolver. Every other script is
+	 * evaluated for every occurrence and refers to {@link ConfigData#EXTERNAL}.
+	 *
+	 * @see ScriptEvaluator#isPure(String)
+	 */
+	private String executeJavascript(String script) {
+		ConfigMetricsListener metrics = configData.getMetrics();
+		boolean pure = ScriptEvaluator.isPure(script);
+		if (!pure) {
+			referExternal();
+		}
+		String result = pure ? scriptResults.get(script) : null;
+		if (result != null) {
+			if (metrics != null) {
+				metrics.count(ConfigMetricsListener.Counter.SCRIPT_CACHE_HITS, 1);
+			}
+			return result;
+		}
+		long start = (metrics != null) ? System.nanoTime() : 0;
+		result = ScriptEvaluator.evaluate(script);
+		if (pure) {
+			scriptResults.put(script, result);
+		}
+		if (metrics != null) {
+			metrics.timing(ConfigMetricsListener.Phase.SCRIPT, System.nanoTime() - start);
+			metrics.count(ConfigMetricsListener.Counter.SCRIPT_EVALUATIONS, 1);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,130 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Source of the values of ${name} placeholders that are not a reference to a
+ * key<br>
+ * References to keys, ${[section]:key}, are always resolved from the
+ * configuration itself first. All other placeholders are looked up in the
+ * property source of the file, by default the environment variables and then
+ * the system properties. Sources can be chained, for example to look up
+ * secrets before the environment, and wrapped in a {@link CachedPropertySource}
+ * to remember their values.
+ *
+ * @author Rudo Peters
+ *
+ */
+@FunctionalInterface
+public interface PropertySource {
+
+	/**
+	 * Look up a property
+	 *
+	 * @param name
+	 *            The name of the property
+	 * @return String value of the property or null if the source does not have
+	 *         it
+	 */
+	String getProperty(String name);
+
+	/**
+	 * Get the default source: the environment variables and then the system
+	 * properties
+	 *
+	 * @return PropertySource
+	 */
+	static PropertySource defaults() {
+		return PropertySources.DEFAULTS;
+	}
+
+	/**
+	 * Get the environment variables, they can not change while the JVM runs so
+	 * they are read once
+	 *
+	 * @return PropertySource
+	 */
+	static PropertySource environment() {
+		return PropertySources.ENVIRONMENT;
+	}
+
+	/**
+	 * Get the system properties, they are looked up on every call
+	 *
+	 * @return PropertySource
+	 */
+	static PropertySource systemProperties() {
+		return PropertySources.SYSTEM_PROPERTIES;
+	}
+
+	/**
+	 * Get a source that looks up the properties in a map, changes of the map
+	 * are seen by the source
+	 *
+	 * @param map
+	 *            The properties by their name
+	 * @return PropertySource
+	 */
+	static PropertySource of(Map<String, String> map) {
+		if (map == null) {
+			throw new IllegalArgumentException("Map must not be null");
+		}
+		return map::get;
+	}
+
+	/**
+	 * Read a properties file, for example a file with secrets
+	 *
+	 * @param file
+	 *            The file in {@link Properties} format
+	 * @return PropertySource with the properties of the file as they were read
+	 * @throws IOException
+	 */
+	static PropertySource fromFile(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("File must not be null");
+		}
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file.toPath())) {
+			properties.load(in);
+		}
+		Map<String, String> map = new HashMap<String, String>();
+		for (String name : properties.stringPropertyNames()) {
+			map.put(name, properties.getProperty(name));
+		}
+		return Collections.unmodifiableMap(map)::get;
+	}
+
+	/**
+	 * Chain sources, a property is taken from the first source that has it
+	 *
+	 * @param sources
+	 *            The sources in the order they are asked
+	 * @return PropertySource
+	 */
+	static PropertySource chain(PropertySource... sources) {
+		final List<PropertySource> chain = Arrays.asList(sources.clone());
+		if (chain.contains(null)) {
+			throw new IllegalArgumentException("Source must not be null");
+		}
+		return name -> {
+			for (PropertySource source : chain) {
+				String value = source.getProperty(name);
+				if (value != null) {
+					return value;
+				}
+			}
+			return null;
+		};
+	}
+
+}
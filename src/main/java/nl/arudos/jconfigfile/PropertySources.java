@@ -0,0 +1,17 @@
+package nl.arudos.jconfigfile;
+
+/**
+ * The built-in property sources of {@link PropertySource}
+ *
+ * @author Rudo Peters
+ *
+ */
+final class PropertySources {
+	static final PropertySource ENVIRONMENT = System.getenv()::get;
+	static final PropertySource SYSTEM_PROPERTIES = System::getProperty;
+	static final PropertySource DEFAULTS = PropertySource.chain(ENVIRONMENT, SYSTEM_PROPERTIES);
+
+	private PropertySources() {
+	}
+
+}
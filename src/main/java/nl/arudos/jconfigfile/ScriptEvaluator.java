@@ -0,0 +1,170 @@
+package nl.arudos.jconfigfile;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+/**
+ * Evaluates the JavaScript expressions of ${!- ... -!} placeholders<br>
+ * Script engines are created lazily and kept in a pool that is shared by all
+ * configuration files, an engine is only used by one thread at a time. At most
+ * one idle engine per processor is kept, engines that are returned to a full
+ * pool are dropped. When
+ * the engine supports {@link Compilable}, every script is compiled once per
+ * engine and the compiled script is cached by its source text. Each
+ * evaluation gets fresh bindings, so scripts can not see each other's
+ * variables.
+ * 
+ * @author Rudo Peters
+ *
+ */
+final class ScriptEvaluator {
+	private static final String ENGINE_NAME = "JavaScript";
+	private static final int MAX_COMPILED_SCRIPTS = 256;
+	private static final int MAX_POOLED_ENGINES = Runtime.getRuntime().availableProcessors();
+	/**
+	 * The tokens of a pure script: whitespace, number and string literals,
+	 * operators, parentheses and the deterministic functions and constants of
+	 * Math
+	 */
+	private static final Pattern PURE_TOKEN = Pattern.compile("\\s+"
+			+ "|0[xX][0-9a-fA-F]+|(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][+-]?\\d+)?"
+			+ "|'(?:[^'\\\\\\r\\n]|\\\\.)*'|\"(?:[^\"\\\\\\r\\n]|\\\\.)*\""
+			+ "|===|!==|==|!=|<=|>=|&&|\\|\\||>>>|>>|<<|[-+*/%<>!~&|^?:(),]"
+			+ "|(?:true|false|null|NaN|Infinity|Math\\.(?:abs|acos|asin|atan2?|cbrt|ceil|cos|exp|floor|hypot"
+			+ "|log|log10|log2|max|min|pow|round|sign|sin|sqrt|tan|trunc|PI|E|LN2|LN10|LOG2E|LOG10E|SQRT2|SQRT1_2))"
+			+ "(?![A-Za-z0-9_$])");
+
+	private static final ConcurrentLinkedQueue<PooledEngine> POOL = new ConcurrentLinkedQueue<PooledEngine>();
+	private static final AtomicInteger POOLED = new AtomicInteger();
+	private static ScriptEngineManager manager = null;
+	private static volatile boolean unavailable = false;
+
+	private ScriptEvaluator() {
+	}
+
+	/**
+	 * Check if a script always gives the same result, so its result can be
+	 * reused<br>
+	 * Only expressions of literals, operators and the deterministic functions
+	 * of Math are considered pure. Every other script, such as one that uses a
+	 * variable, a property access, the clock or random numbers, is considered
+	 * impure and evaluated every time.
+	 *
+	 * @param script
+	 *            The JavaScript source
+	 * @return true if the result of the script can be reused
+	 */
+	static boolean isPure(String script) {
+		Matcher matcher = PURE_TOKEN.matcher(script);
+		int position = 0;
+		while (position < script.length()) {
+			matcher.region(position, script.length());
+			if (!matcher.lookingAt()) {
+				return false;
+			}
+			position = matcher.end();
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluate a script
+	 * 
+	 * @param script
+	 *            The JavaScript source
+	 * @return String representation of the result, or ##EXCEPTION: followed
+	 *         by the error message when the evaluation failed
+	 */
+	static String evaluate(String script) {
+		PooledEngine engine = borrow();
+		if (engine == null) {
+			return "##EXCEPTION: No " + ENGINE_NAME + " engine available";
+		}
+		try {
+			return String.valueOf(engine.eval(script));
+		} catch (ScriptException e) {
+			return "##EXCEPTION: " + e.getLocalizedMessage();
+		} finally {
+			release(engine);
+		}
+	}
+
+	private static PooledEngine borrow() {
+		PooledEngine engine = POOL.poll();
+		if (engine != null) {
+			POOLED.decrementAndGet();
+			return engine;
+		}
+		if (unavailable) {
+			return null;
+		}
+		return createEngine();
+	}
+
+	private static void release(PooledEngine engine) {
+		if (POOLED.incrementAndGet() <= MAX_POOLED_ENGINES) {
+			POOL.offer(engine);
+		} else {
+			POOLED.decrementAndGet();
+		}
+	}
+
+	private static synchronized PooledEngine createEngine() {
+		if (manager == null) {
+			manager = new ScriptEngineManager();
+		}
+		ScriptEngine engine = manager.getEngineByName(ENGINE_NAME);
+		if (engine == null) {
+			// remember this, engine discovery is expensive
+			unavailable = true;
+			return null;
+		}
+		return new PooledEngine(engine);
+	}
+
+	private static class PooledEngine {
+		private final ScriptEngine engine;
+		private final Map<String, CompiledScript> compiledScripts;
+
+		PooledEngine(ScriptEngine engine) {
+			this.engine = engine;
+			if (engine instanceof Compilable) {
+				this.compiledScripts = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+						return size() > MAX_COMPILED_SCRIPTS;
+					}
+				};
+			} else {
+				this.compiledScripts = null;
+			}
+		}
+
+		Object eval(String script) throws ScriptException {
+			Bindings bindings = engine.createBindings();
+			if (compiledScripts == null) {
+				return engine.eval(script, bindings);
+			}
+			CompiledScript compiled = compiledScripts.get(script);
+			if (compiled == null) {
+				compiled = ((Compilable) engine).compile(script);
+				compiledScripts.put(script, compiled);
+			}
+			return compiled.eval(bindings);
+		}
+	}
+
+}
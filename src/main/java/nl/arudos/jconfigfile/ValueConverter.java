@@ -0,0 +1,146 @@
+package nl.arudos.jconfigfile;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Converts the value of a key into a typed value<br>
+ * The converters are stateless and the converted values are immutable, so a
+ * converted value can be cached on its line and shared by all readers.
+ *
+ * @author Rudo Peters
+ *
+ */
+abstract class ValueConverter<T> {
+
+	/**
+	 * Whole numbers in the range of an int
+	 */
+	static final ValueConverter<Integer> INTEGER = new ValueConverter<Integer>("integer") {
+		@Override
+		Integer convert(String value) {
+			return Integer.valueOf(value);
+		}
+	};
+
+	/**
+	 * Whole numbers in the range of a long
+	 */
+	static final ValueConverter<Long> LONG = new ValueConverter<Long>("long") {
+		@Override
+		Long convert(String value) {
+			return Long.valueOf(value);
+		}
+	};
+
+	/**
+	 * true/false, yes/no, on/off or 1/0, in any case
+	 */
+	static final ValueConverter<Boolean> BOOLEAN = new ValueConverter<Boolean>("boolean") {
+		@Override
+		Boolean convert(String value) {
+			switch (value.toLowerCase(Locale.ROOT)) {
+			case "true":
+			case "yes":
+			case "on":
+			case "1":
+				return Boolean.TRUE;
+			case "false":
+			case "no":
+			case "off":
+			case "0":
+				return Boolean.FALSE;
+			default:
+				throw new IllegalArgumentException(value);
+			}
+		}
+	};
+
+	/**
+	 * An ISO-8601 duration such as PT1M30S, or a number with one of the units
+	 * ms, s, m, h or d, a number without a unit is in milliseconds
+	 */
+	static final ValueConverter<Duration> DURATION = new ValueConverter<Duration>("duration") {
+		@Override
+		Duration convert(String value) {
+			if (value.startsWith("P") || value.startsWith("p") || value.startsWith("-P")
+					|| value.startsWith("-p")) {
+				try {
+					return Duration.parse(value);
+				} catch (DateTimeParseException e) {
+					throw new IllegalArgumentException(value, e);
+				}
+			}
+
+			int unitStart = value.length();
+			while (unitStart > 0 && Character.isLetter(value.charAt(unitStart - 1))) {
+				unitStart--;
+			}
+			long amount = Long.parseLong(value.substring(0, unitStart).trim());
+			switch (value.substring(unitStart).toLowerCase(Locale.ROOT)) {
+			case "":
+			case "ms":
+				return Duration.ofMillis(amount);
+			case "s":
+				return Duration.ofSeconds(amount);
+			case "m":
+				return Duration.ofMinutes(amount);
+			case "h":
+				return Duration.ofHours(amount);
+			case "d":
+				return Duration.ofDays(amount);
+			default:
+				throw new IllegalArgumentException(value);
+			}
+		}
+	};
+
+	/**
+	 * Comma separated values, every item is trimmed
+	 */
+	static final ValueConverter<List<String>> LIST = new ValueConverter<List<String>>("list") {
+		@Override
+		List<String> convert(String value) {
+			List<String> items = new ArrayList<String>();
+			int start = 0;
+			while (true) {
+				int end = value.indexOf(',', start);
+				if (end == -1) {
+					items.add(value.substring(start).trim());
+					break;
+				}
+				items.add(value.substring(start, end).trim());
+				start = end + 1;
+			}
+			return Collections.unmodifiableList(items);
+		}
+	};
+
+	private final String typeName;
+
+	ValueConverter(String typeName) {
+		this.typeName = typeName;
+	}
+
+	/**
+	 * Get the name of the type, used in error messages
+	 */
+	String getTypeName() {
+		return typeName;
+	}
+
+	/**
+	 * Convert a value
+	 *
+	 * @param value
+	 *            The trimmed value, never empty
+	 * @throws IllegalArgumentException
+	 *             if the value can not be converted
+	 */
+	abstract T convert(String value);
+
+}
@@ -0,0 +1,124 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for reading a configuration while other threads change it
+ */
+public class ConcurrencyTest extends TestCase {
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("concurrency", ".ini");
+		StringBuilder sb = new StringBuilder("[stable]\nkey=value\n[data]\n");
+		for (int i = 0; i < 1000; i++) {
+			sb.append("key").append(i).append('=').append(i).append('\n');
+		}
+		LookupTest.write(file, sb.toString());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testReadDuringReload() throws Exception {
+		final JConfigFile config = new JConfigFile(file);
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicReference<String> failure = new AtomicReference<String>();
+
+		Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (running.get()) {
+						if (!"value".equals(config.getValue("stable", "key"))
+								|| !config.hasKey("data", "key999")) {
+							failure.set("Partial configuration visible");
+						}
+					}
+				}
+			});
+			readers[t].start();
+		}
+
+		try {
+			for (int i = 0; i < 50; i++) {
+				config.load();
+				config.setItem("data", "extra" + i, "x");
+			}
+		} finally {
+			running.set(false);
+			for (Thread reader : readers) {
+				reader.join();
+			}
+		}
+		assertNull(failure.get());
+		assertEquals("x", config.getValue("data", "extra49"));
+	}
+
+	public void testTransactionIsolation() throws Exception {
+		final JConfigFile config = new JConfigFile(file);
+		final AtomicReference<String> seen = new AtomicReference<String>();
+		config.beginTransaction();
+		config.setItem("stable", "key", "pending");
+		assertEquals("pending", config.getValue("stable", "key"));
+
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				seen.set(config.getValue("stable", "key"));
+			}
+		});
+		reader.start();
+		reader.join();
+		assertEquals("value", seen.get());
+
+		config.commit();
+		reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				seen.set(config.getValue("stable", "key"));
+			}
+		});
+		reader.start();
+		reader.join();
+		assertEquals("pending", seen.get());
+	}
+
+	public void testConcurrentWriters() throws Exception {
+		final JConfigFile config = new JConfigFile(file);
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; t++) {
+			final int id = t;
+			writers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 25; i++) {
+							config.setItem("writer" + id, "key" + i, String.valueOf(i));
+						}
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			writers[t].start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		JConfigFile reloaded = new JConfigFile(file);
+		for (int t = 0; t < writers.length; t++) {
+			assertEquals(25, reloaded.getKeys("writer" + t).size());
+		}
+	}
+
+}
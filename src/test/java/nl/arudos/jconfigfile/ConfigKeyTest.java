@@ -0,0 +1,70 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the key handles
+ */
+public class ConfigKeyTest extends TestCase {
+	private File file;
+	private JConfigFile config;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("configkey", ".ini");
+		LookupTest.write(file, "[Limits]\nRate=100\nname=api\n");
+		config = new JConfigFile(file);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testFollowsChanges() throws IOException {
+		ConfigKey<Integer> rate = config.bindInt(" limits ", "RATE", 10);
+		ConfigKey<String> name = config.bindValue("limits", "name", null);
+		assertEquals(100, rate.get().intValue());
+		assertSame(rate.get(), rate.get());
+		assertEquals("api", name.get());
+
+		config.setItem("Limits", "rate", "200");
+		assertEquals(200, rate.get().intValue());
+
+		LookupTest.write(file, "[Limits]\nname=web\n");
+		config.load();
+		assertEquals(10, rate.get().intValue());
+		assertEquals("web", name.get());
+
+		config.setItem("Limits", "rate", "300");
+		assertEquals(300, rate.get().intValue());
+	}
+
+	public void testTransaction() throws IOException {
+		ConfigKey<Integer> rate = config.bindInt("limits", "rate", 10);
+		config.beginTransaction();
+		try {
+			config.setItem("Limits", "rate", "1");
+			assertEquals(1, rate.get().intValue());
+			config.setItem("Limits", "rate", "2");
+			assertEquals(2, rate.get().intValue());
+		} finally {
+			config.rollback();
+		}
+		assertEquals(100, rate.get().intValue());
+	}
+
+	public void testInvalidValue() throws IOException {
+		ConfigKey<Boolean> flag = config.bindBoolean("limits", "name", false);
+		try {
+			flag.get();
+			fail("Invalid value not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Value 'api' of key 'name' in section 'limits' is not a valid boolean", e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package nl.arudos.jconfigfile;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for splitting a line into key, value and comment
+ */
+public class ConfigLineTest extends TestCase {
+
+	public void testKeyValueComment() {
+		ConfigLine line = new ConfigLine(" key = value ;; comment");
+		assertEquals(" key = value", line.getData());
+		assertEquals("key", line.getKey());
+		assertEquals(" value", line.getValue());
+		assertEquals(" ;; comment", line.getComment());
+		assertTrue(line.hasData());
+		assertTrue(line.hasValue());
+		assertEquals(" key = value ;; comment", line.getLine());
+	}
+
+	public void testCommentLine() {
+		ConfigLine line = new ConfigLine("  # key=value");
+		assertNull(line.getData());
+		assertNull(line.getKey());
+		assertNull(line.getValue());
+		assertFalse(line.hasData());
+		assertEquals("  # key=value", line.getComment());
+	}
+
+	public void testWithoutComment() {
+		ConfigLine line = new ConfigLine("url=http://host/#anchor;x");
+		assertEquals("http://host/#anchor;x", line.getValue());
+		assertFalse(line.hasComment());
+
+		line = new ConfigLine("flag");
+		assertEquals("flag", line.getKey());
+		assertNull(line.getValue());
+		assertFalse(line.hasValue());
+
+		line = new ConfigLine("empty= ");
+		assertEquals(" ", line.getValue());
+		assertFalse(line.hasValue());
+		assertFalse(new ConfigLine("   ").hasData());
+	}
+
+	public void testSetValue() {
+		ConfigLine line = new ConfigLine("path=${home}/bin ; where");
+		line.setValue("/root/bin");
+		assertEquals("/root/bin", line.getValue());
+		assertEquals("path=/root/bin ; where", line.getLine());
+		assertEquals("path=${home}/bin ; where", line.getRawLine());
+
+		ConfigLine copy = new ConfigLine(line);
+		copy.setData("path=/usr/bin");
+		assertEquals("path=/usr/bin ; where", copy.getLine());
+		assertEquals(copy.getLine(), copy.getRawLine());
+		assertEquals("/root/bin", line.getValue());
+	}
+
+}
@@ -0,0 +1,93 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the streaming reader
+ */
+public class ConfigReaderTest extends TestCase {
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("reader", ".ini");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	/**
+	 * Records the events as text
+	 */
+	private static class Recorder implements ConfigHandler {
+		private final List<String> events = new ArrayList<String>();
+
+		@Override
+		public void startSection(String section) {
+			events.add("start " + section);
+		}
+
+		@Override
+		public void keyValue(String section, String key, String value) {
+			events.add(section + ":" + key + "=" + value);
+		}
+
+		@Override
+		public void comment(String section, String comment) {
+			events.add(section + ":" + comment);
+		}
+
+		@Override
+		public void endSection(String section) {
+			events.add("end " + section);
+		}
+	}
+
+	public void testEvents() throws IOException {
+		LookupTest.write(file, "; header\r\nglobal=1\r\n\r\n[Section] ; inline\r\nname=Jörg ; who\r\nflag\r\nref=${[a]:b}");
+		Recorder recorder = new Recorder();
+		new ConfigReader(file).read(recorder);
+		assertEquals("[start , :; header, :global=1, end , start Section, Section: ; inline, Section:name=Jörg, "
+				+ "Section: ; who, Section:flag=null, Section:ref=${[a]:b}, end Section]",
+				recorder.events.toString());
+	}
+
+	public void testLargeFile() throws IOException {
+		// lines and CR+LF pairs cross the boundaries of the buffers
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-16LE")) {
+			w.write('\uFEFF');
+			for (int i = 0; i < 5000; i++) {
+				w.write("[section " + i + "]\r\n");
+				for (int j = 0; j < 10; j++) {
+					w.write("key." + j + "=value ü " + i + "\r\n");
+				}
+			}
+		}
+		final int[] counts = new int[2];
+		new ConfigReader(file).read(new ConfigHandler() {
+			@Override
+			public void startSection(String section) {
+				counts[0]++;
+			}
+
+			@Override
+			public void keyValue(String section, String key, String value) {
+				assertEquals("value ü " + section.substring("section ".length()), value);
+				counts[1]++;
+			}
+		});
+		assertEquals(5001, counts[0]);
+		assertEquals(50000, counts[1]);
+	}
+
+}
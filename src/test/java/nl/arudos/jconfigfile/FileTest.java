@@ -1,8 +1,10 @@
 package nl.arudos.jconfigfile;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.file.Files;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -35,54 +37,62 @@ public class FileTest
     /**
      * Rigourous Test :-)
      */
-    public void testApp()
+    public void testApp() throws Exception
     {
-    	createTestFiles();
+    	File dir = Files.createTempDirectory("filetest").toFile();
+    	try {
+    		createTestFiles(dir);
+    	} finally {
+    		for (File file : dir.listFiles()) {
+    			file.delete();
+    		}
+    		dir.delete();
+    	}
     }
     
-	private void createTestFiles() {
+	private void createTestFiles(File dir) {
 		try {
-			createTestFile("UTF-32BE");
+			createTestFile(dir, "UTF-32BE");
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 		try {
-			createTestFile("UTF-32LE");
+			createTestFile(dir, "UTF-32LE");
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 		try {
-			createTestFile("UTF-16BE");
+			createTestFile(dir, "UTF-16BE");
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 
 		try {
-			createTestFile("UTF-16LE");
+			createTestFile(dir, "UTF-16LE");
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 
 		try {
-			createTestFile("UnicodeBig");
+			createTestFile(dir, "UnicodeBig");
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 
 		try {
-			createTestFile("UTF-16");
+			createTestFile(dir, "UTF-16");
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 
 		try {
-			createTestFile("UTF-32");
+			createTestFile(dir, "UTF-32");
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -90,11 +100,11 @@ public class FileTest
 
 	}
 
-	private void createTestFile(String charset) throws Exception {
+	private void createTestFile(File dir, String charset) throws Exception {
 		FileOutputStream os = null;
 		BufferedWriter bw = null;
 		try {
-			os = new FileOutputStream("D:\\Development\\" + charset + ".txt");
+			os = new FileOutputStream(new File(dir, charset + ".txt"));
 			bw = new BufferedWriter(new OutputStreamWriter(os, charset));
 			// bw.write("Test 1\r\nTest 2\r\nTest 3\r\n");
 			bw.write("Test 1\r\n");
@@ -0,0 +1,99 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for reloading only the changed sections of a file
+ */
+public class IncrementalReloadTest extends TestCase {
+	private static final String CONTENT = "global=1\n[a]\nx=${[b]:y}/x\nz=${[a]:x}/z\n[b]\ny=old\n[c]\nw=plain\n";
+
+	private File file;
+	private JConfigFile config;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("incremental", ".ini");
+		LookupTest.write(file, CONTENT);
+		config = new JConfigFile(file);
+		config.setIncrementalReload(true);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testUnchangedSectionsReused() throws IOException {
+		ConfigLine global = config.current().findKey("", "global");
+		ConfigLine w = config.current().findKey("c", "w");
+		ConfigLine y = config.current().findKey("b", "y");
+
+		LookupTest.write(file, CONTENT.replace("w=plain", "w=changed"));
+		config.load();
+		assertSame(global, config.current().findKey("", "global"));
+		assertSame(y, config.current().findKey("b", "y"));
+		assertNotSame(w, config.current().findKey("c", "w"));
+		assertEquals("changed", config.getValue("c", "w"));
+	}
+
+	public void testDependentsResolved() throws IOException {
+		assertEquals("old/x/z", config.getValue("a", "z"));
+		ConfigLine global = config.current().findKey("", "global");
+
+		LookupTest.write(file, CONTENT.replace("y=old", "y=new"));
+		config.load();
+		assertEquals("new/x", config.getValue("a", "x"));
+		assertEquals("new/x/z", config.getValue("a", "z"));
+		assertSame(global, config.current().findKey("", "global"));
+
+		// the same result as a full parse
+		config.setIncrementalReload(false);
+		config.load();
+		assertEquals("new/x/z", config.getValue("a", "z"));
+	}
+
+	public void testAddedAndRemovedSections() throws IOException {
+		LookupTest.write(file, "global=1\n[a]\nx=${[b]:y}/x\nz=${[a]:x}/z\n[c]\nw=plain\n[d]\nv=${[c]:w}\n");
+		config.load();
+		assertFalse(config.hasSection("b"));
+		assertEquals("${[b]:y}/x", config.getValue("a", "x"));
+		assertEquals("plain", config.getValue("d", "v"));
+
+		LookupTest.write(file, CONTENT);
+		config.load();
+		assertEquals("old/x/z", config.getValue("a", "z"));
+		assertFalse(config.hasSection("d"));
+	}
+
+	public void testDuplicates() throws IOException {
+		LookupTest.write(file, CONTENT + "[A]\n");
+		try {
+			config.load();
+			fail("Duplicate section not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Duplicate section 'A'", e.getMessage());
+		}
+		assertEquals("old/x/z", config.getValue("a", "z"));
+
+		LookupTest.write(file, CONTENT.replace("w=plain", "w=plain\nW=again"));
+		try {
+			config.load();
+			fail("Duplicate key not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Duplicate key 'W' in section 'c'", e.getMessage());
+		}
+	}
+
+	public void testSaveAfterReload() throws IOException {
+		LookupTest.write(file, CONTENT.replace("y=old", "y=new"));
+		config.load();
+		config.setItem("c", "w", "set");
+		assertEquals("new/x/z", new JConfigFile(file).getValue("a", "z"));
+		assertEquals("set", new JConfigFile(file).getValue("c", "w"));
+	}
+
+}
@@ -0,0 +1,66 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the merged view of stacked files
+ */
+public class LayeredConfigTest extends TestCase {
+	private File baseFile;
+	private File hostFile;
+	private JConfigFile base;
+	private JConfigFile host;
+	private LayeredConfig config;
+
+	@Override
+	protected void setUp() throws Exception {
+		baseFile = File.createTempFile("base", ".ini");
+		hostFile = File.createTempFile("host", ".ini");
+		LookupTest.write(baseFile, "[db]\nurl=jdbc://base\nuser=app\n[log]\nlevel=INFO\n");
+		LookupTest.write(hostFile, "[DB]\nURL=jdbc://host\n");
+		base = new JConfigFile(baseFile);
+		host = new JConfigFile(hostFile);
+		config = new LayeredConfig(base, host);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		config.close();
+		baseFile.delete();
+		hostFile.delete();
+	}
+
+	public void testMergedLookup() {
+		assertEquals("jdbc://host", config.getValue("db", "url"));
+		assertSame(host, config.getLayer("db", "url"));
+		assertEquals("app", config.getValue("db", "user"));
+		assertSame(base, config.getLayer("db", "user"));
+		assertEquals("INFO", config.getValue(" log ", "LEVEL"));
+		assertFalse(config.hasKey("log", "file"));
+		assertNull(config.getValue("log", "file"));
+	}
+
+	public void testLayerChanges() throws IOException {
+		host.setItem("log", "level", "DEBUG");
+		assertEquals("DEBUG", config.getValue("log", "level"));
+
+		// removing the override shows the lower layer again
+		host.removeItem("db", "url");
+		assertEquals("jdbc://base", config.getValue("db", "url"));
+		assertSame(base, config.getLayer("db", "url"));
+
+		LookupTest.write(baseFile, "[db]\nurl=jdbc://other\n");
+		base.load();
+		assertEquals("jdbc://other", config.getValue("db", "url"));
+		assertFalse(config.hasKey("db", "user"));
+		assertEquals("DEBUG", config.getValue("log", "level"));
+
+		config.close();
+		host.setItem("log", "level", "WARN");
+		assertEquals("DEBUG", config.getValue("log", "level"));
+	}
+
+}
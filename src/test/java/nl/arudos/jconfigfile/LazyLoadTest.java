@@ -0,0 +1,89 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for parsing sections when they are first used
+ */
+public class LazyLoadTest extends TestCase {
+	private static final String CONTENT = "; header\r\nglobal=${[b]:y}\r\n[a]\r\nx=${[b]:y}/x ; comment\r\n\r\n"
+			+ "[b]\r\ny=root\r\n[c]\r\nz=1\r\nZ=2\r\n";
+
+	private File file;
+	private JConfigFile config;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("lazy", ".ini");
+		LookupTest.write(file, CONTENT);
+		config = new JConfigFile(file, null, true);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testSectionsParsedOnUse() {
+		assertTrue(config.isLazyLoading());
+		assertEquals(Arrays.asList("", "a", "b", "c"), config.getSections());
+		assertFalse(config.current().isParsed("a"));
+
+		assertEquals("root/x", config.getValue("A", "x"));
+		assertTrue(config.current().isParsed("a"));
+		assertTrue(config.current().isParsed("b"));
+		assertFalse(config.current().isParsed("c"));
+		assertEquals("root", config.getValue("", "global"));
+		assertEquals(Arrays.asList("y"), config.getKeys("b"));
+	}
+
+	public void testDuplicateKeyOnUse() {
+		assertTrue(config.hasSection("c"));
+		try {
+			config.hasKey("c", "z");
+			fail("Duplicate key not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Duplicate key 'Z' in section 'c'", e.getMessage());
+		}
+	}
+
+	public void testSaveKeepsUnparsedSections() throws IOException {
+		LookupTest.write(file, CONTENT.replace("Z=2", "w=2"));
+		config.load();
+		byte[] original = Files.readAllBytes(file.toPath());
+		config.save();
+		assertTrue(Arrays.equals(original, Files.readAllBytes(file.toPath())));
+
+		config.setItem("b", "y", "changed");
+		assertFalse(config.current().isParsed("c"));
+		String content = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+		assertEquals(CONTENT.replace("Z=2", "w=2").replace("y=root", "y=changed"), content);
+	}
+
+	public void testListenerSeesUnparsedChanges() throws IOException {
+		final AtomicReference<ConfigChangeEvent> event = new AtomicReference<ConfigChangeEvent>();
+		config.addChangeListener(new ConfigChangeListener() {
+			@Override
+			public void configChanged(ConfigChangeEvent e) {
+				event.set(e);
+			}
+		});
+		LookupTest.write(file, CONTENT.replace("Z=2", "w=2"));
+		config.load();
+		LookupTest.write(file, CONTENT.replace("Z=2", "").replace("y=root", "y=new"));
+		config.load();
+		List<ConfigChange> changed = event.get().getChanged();
+		assertEquals(3, changed.size());
+		assertEquals(1, event.get().getRemoved().size());
+		assertEquals("w", event.get().getRemoved().get(0).getKey());
+		assertEquals("new/x", config.getValue("a", "x"));
+	}
+
+}
@@ -0,0 +1,98 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for placeholders that are resolved when a value is read
+ */
+public class LazyResolutionTest extends TestCase {
+	private File file;
+	private JConfigFile config;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("lazy", ".ini");
+		LookupTest.write(file, "[a]\nhost=localhost\nport=80\nurl=http://${[a]:host}:${[a]:port}\n"
+				+ "[b]\nurl=${[a]:url}/b\nretries=${[a]:port}\n");
+		config = new JConfigFile(file, null, false, true);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testResolveOnRead() {
+		assertTrue(config.isLazyResolution());
+		assertEquals("http://localhost:80/b", config.getValue("b", "url"));
+		assertEquals("http://localhost:80", config.getValue("a", "url"));
+		assertEquals(80, config.getInt("b", "retries", 0));
+		assertEquals(Integer.valueOf(80), config.bindInt("b", "retries", 0).get());
+	}
+
+	public void testTemplatesAreSaved() throws IOException {
+		assertEquals("http://localhost:80/b", config.getValue("b", "url"));
+		config.setItem("a", "port", "8080");
+		String content = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+		assertTrue(content, content.contains("url=http://${[a]:host}:${[a]:port}"));
+		assertTrue(content, content.contains("url=${[a]:url}/b"));
+	}
+
+	public void testChangedReferences() throws IOException {
+		assertEquals("http://localhost:80/b", config.getValue("b", "url"));
+		config.setItem("a", "host", "example.com");
+		assertEquals("http://example.com:80/b", config.getValue("b", "url"));
+
+		config.removeItem("a", "port");
+		assertEquals("http://example.com:${[a]:port}/b", config.getValue("b", "url"));
+		assertEquals("${[a]:port}", config.getValue("b", "retries"));
+
+		config.beginTransaction();
+		config.setItem("a", "port", "443");
+		assertEquals("http://example.com:443/b", config.getValue("b", "url"));
+		config.rollback();
+		assertEquals("http://example.com:${[a]:port}/b", config.getValue("b", "url"));
+	}
+
+	public void testDependentsInChangeEvent() throws IOException {
+		final List<ConfigChangeEvent> events = new ArrayList<ConfigChangeEvent>();
+		config.addChangeListener(events::add);
+		LayeredConfig layered = new LayeredConfig(config);
+		assertEquals("80", layered.getValue("b", "retries"));
+
+		config.setItem("a", "port", "8080");
+		assertEquals(1, events.size());
+		Map<String, ConfigChange> changes = new HashMap<String, ConfigChange>();
+		for (ConfigChange change : events.get(0).getChanged()) {
+			changes.put(change.getSection() + "." + change.getKey(), change);
+		}
+		assertEquals(4, changes.size());
+		assertEquals("8080", changes.get("a.port").getNewValue());
+		assertEquals("http://localhost:80", changes.get("a.url").getOldValue());
+		assertEquals("http://localhost:8080", changes.get("a.url").getNewValue());
+		assertEquals("http://localhost:8080/b", changes.get("b.url").getNewValue());
+		assertEquals("8080", changes.get("b.retries").getNewValue());
+
+		assertEquals("8080", layered.getValue("b", "retries"));
+		assertEquals("http://localhost:8080/b", layered.getValue("b", "url"));
+		layered.close();
+	}
+
+	public void testLazyLoading() throws IOException {
+		try {
+			new JConfigFile(file, null, true, true);
+			fail("Lazy loading combined with lazy resolution");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
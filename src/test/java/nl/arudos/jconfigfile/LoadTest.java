@@ -0,0 +1,123 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for loading and saving files in the supported encodings
+ */
+public class LoadTest extends TestCase {
+	private static final String CONTENT = "; comment\r\n\r\n[Section]\r\nname=Jörg\r\n";
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("load", ".ini");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private void write(String charset, boolean bom, String content) throws IOException {
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(file), charset)) {
+			if (bom) {
+				w.write('\uFEFF');
+			}
+			w.write(content);
+		}
+	}
+
+	private void assertLoaded(String charset, String expectedCharset) throws IOException {
+		write(charset, false, CONTENT);
+		JConfigFile config = new JConfigFile(file);
+		assertEquals(Charset.forName(expectedCharset), config.getCharset());
+		assertEquals("\r\n", config.getLineSeparator());
+		assertEquals("Jörg", config.getValue("section", "NAME"));
+	}
+
+	public void testDetectCharset() throws IOException {
+		assertLoaded("UTF-8", "UTF-8");
+		assertLoaded("UTF-16BE", "UTF-16BE");
+		assertLoaded("UTF-16LE", "UTF-16LE");
+		assertLoaded("UTF-32BE", "UTF-32BE");
+		assertLoaded("UTF-32LE", "UTF-32LE");
+	}
+
+	public void testSuppliedCharset() throws IOException {
+		write("Cp1252", false, CONTENT);
+		JConfigFile config = new JConfigFile(file, "Cp1252");
+		assertEquals("Jörg", config.getValue("Section", "name"));
+	}
+
+	public void testBOM() throws IOException {
+		write("UTF-8", true, CONTENT);
+		JConfigFile config = new JConfigFile(file);
+		assertTrue(config.hasBOM());
+		assertEquals(Charset.forName("UTF-8"), config.getCharset());
+		assertEquals("Jörg", config.getValue("Section", "name"));
+
+		// the UTF-32LE BOM starts with the UTF-16LE BOM
+		write("UTF-32LE", true, CONTENT);
+		config = new JConfigFile(file);
+		assertEquals("Jörg", config.getValue("Section", "name"));
+	}
+
+	public void testSaveRoundTrip() throws IOException {
+		write("UTF-8", true, CONTENT);
+		byte[] original = Files.readAllBytes(file.toPath());
+		new JConfigFile(file).save();
+		assertTrue(Arrays.equals(original, Files.readAllBytes(file.toPath())));
+	}
+
+	public void testAtomicSave() throws IOException {
+		write("UTF-16LE", false, CONTENT);
+		JConfigFile config = new JConfigFile(file);
+		config.setSyncOnSave(true);
+		config.setItem("Section", "added", "ü");
+		assertEquals("ü", new JConfigFile(file).getValue("section", "added"));
+
+		// only the configuration file itself is left in the directory
+		File[] files = file.getParentFile().listFiles();
+		for (File f : files) {
+			assertFalse(f.getName().startsWith("." + file.getName()));
+		}
+	}
+
+	public void testLineSeparators() throws IOException {
+		write("UTF-8", false, "a=1\nb=2\n\nc=3");
+		JConfigFile config = new JConfigFile(file);
+		assertEquals("\n", config.getLineSeparator());
+		assertEquals("3", config.getValue("", "c"));
+
+		write("UTF-8", false, "a=1\rb=2\r");
+		config = new JConfigFile(file);
+		assertEquals("\r", config.getLineSeparator());
+		assertEquals("2", config.getValue("", "b"));
+	}
+
+	public void testSingleLine() throws IOException {
+		write("UTF-8", false, "a=1");
+		JConfigFile config = new JConfigFile(file);
+		assertEquals("", config.getLineSeparator());
+		assertEquals("1", config.getValue("", "a"));
+	}
+
+	public void testEmptyFile() throws IOException {
+		write("UTF-8", false, "");
+		JConfigFile config = new JConfigFile(file);
+		assertTrue(config.hasSection(""));
+		assertTrue(config.getKeys("").isEmpty());
+	}
+
+}
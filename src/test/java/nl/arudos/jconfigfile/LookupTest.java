@@ -0,0 +1,93 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for section and key lookups
+ */
+public class LookupTest extends TestCase {
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("lookup", ".ini");
+		write(file, "global=1\r\n[Browser settings]\r\nWebDriver.Binary=chrome ; the driver\r\nempty=\r\nflag\r\n[Other]\r\nkey=value\r\n");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	static void write(File file, String content) throws IOException {
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+			w.write(content);
+		}
+	}
+
+	public void testCaseInsensitiveLookup() throws IOException {
+		JConfigFile config = new JConfigFile(file);
+		assertTrue(config.hasSection("browser SETTINGS"));
+		assertTrue(config.hasSection(" Other "));
+		assertFalse(config.hasSection("missing"));
+		assertTrue(config.hasKey("BROWSER settings", "webdriver.binary"));
+		assertEquals("chrome", config.getValue("browser settings", "WEBDRIVER.BINARY"));
+		assertEquals("1", config.getValue("", "GLOBAL"));
+		assertEquals("", config.getValue("Browser settings", "empty"));
+		assertNull(config.getValue("Browser settings", "flag"));
+		assertNull(config.getValue("missing", "key"));
+		assertEquals(3, config.getKeys("browser settings").size());
+		assertTrue(config.getKeys("missing").isEmpty());
+	}
+
+	public void testSetItemUpdatesIndex() throws IOException {
+		JConfigFile config = new JConfigFile(file);
+		assertTrue(config.setItem("other", "KEY", "changed"));
+		assertTrue(config.setItem("New section", "added", "yes"));
+		assertEquals("changed", config.getValue("Other", "key"));
+		assertEquals("yes", config.getValue("new section", "ADDED"));
+
+		JConfigFile reloaded = new JConfigFile(file);
+		assertEquals("changed", reloaded.getValue("Other", "key"));
+		assertEquals("yes", reloaded.getValue("New section", "added"));
+		assertEquals("chrome", reloaded.getValue("Browser settings", "webdriver.binary"));
+	}
+
+	public void testDuplicateKey() throws IOException {
+		write(file, "[a]\nx=1\nX=2\n");
+		try {
+			new JConfigFile(file);
+			fail("Duplicate key not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Duplicate key 'X' in section 'a'", e.getMessage());
+		}
+	}
+
+	public void testLargeSection() throws IOException {
+		StringBuilder sb = new StringBuilder("[flags]\n");
+		for (int i = 0; i < 20000; i++) {
+			sb.append("feature.").append(i).append("=").append(i % 2 == 0).append('\n');
+		}
+		write(file, sb.toString());
+		JConfigFile config = new JConfigFile(file);
+		assertEquals(20000, config.getKeys("flags").size());
+		assertEquals("false", config.getValue("FLAGS", "Feature.19999"));
+	}
+
+	public void testDuplicateSection() throws IOException {
+		write(file, "[a]\nx=1\n[A]\n");
+		try {
+			new JConfigFile(file);
+			fail("Duplicate section not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Duplicate section 'A'", e.getMessage());
+		}
+	}
+
+}
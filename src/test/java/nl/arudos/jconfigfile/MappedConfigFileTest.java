@@ -0,0 +1,143 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the memory mapped read-only view
+ */
+public class MappedConfigFileTest extends TestCase {
+	private static final String CONTENT = "; comment\r\nglobal=1\r\n\r\n[Section] ; header\r\nname=Jörg ; who\r\n"
+			+ "flag\r\nempty=\r\n [ Other ]\r\nkey = value\r\nref=${[Section]:name}";
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("mapped", ".ini");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private void write(String charset, boolean bom, String content) throws IOException {
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(file), charset)) {
+			if (bom) {
+				w.write('\uFEFF');
+			}
+			w.write(content);
+		}
+	}
+
+	private void assertContent(MappedConfigFile config) {
+		assertEquals(Arrays.asList("", "Section", "Other"), config.getSections());
+		assertTrue(config.hasSection(" other"));
+		assertEquals(Arrays.asList("name", "flag", "empty"), config.getKeys("section"));
+		assertEquals("1", config.getValue("", "GLOBAL"));
+		assertEquals("Jörg", config.getValue("SECTION", "name"));
+		assertEquals("", config.getValue("Section", "empty"));
+		assertNull(config.getValue("Section", "flag"));
+		assertTrue(config.hasKey("Section", "flag"));
+		assertEquals(" value", config.getValue("other", "KEY"));
+		assertEquals("${[Section]:name}", config.getValue("other", "ref"));
+		assertNull(config.getValue("missing", "key"));
+		assertFalse(config.hasKey("Other", "name"));
+	}
+
+	public void testEncodings() throws IOException {
+		String[] charsets = { "UTF-8", "UTF-16BE", "UTF-16LE", "UTF-32BE", "UTF-32LE" };
+		for (String charset : charsets) {
+			write(charset, false, CONTENT);
+			MappedConfigFile config = new MappedConfigFile(file);
+			assertEquals(Charset.forName(charset), config.getCharset());
+			assertFalse(config.hasBOM());
+			assertContent(config);
+
+			write(charset, true, CONTENT);
+			config = new MappedConfigFile(file);
+			assertTrue(config.hasBOM());
+			assertContent(config);
+		}
+		write("Cp1252", false, CONTENT);
+		assertContent(new MappedConfigFile(file, "Cp1252"));
+	}
+
+	public void testEbcdicRejected() throws IOException {
+		write("Cp037", false, CONTENT);
+		assertEquals("Jörg", new JConfigFile(file, "Cp037").getValue("Section", "name"));
+		try {
+			new MappedConfigFile(file, "Cp037");
+			fail("EBCDIC not rejected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Charset 'IBM037' is not supported for memory mapped files", e.getMessage());
+		}
+	}
+
+	public void testClose() throws IOException {
+		write("UTF-8", false, CONTENT);
+		MappedConfigFile config = new MappedConfigFile(file);
+		assertEquals("1", config.getValue("", "global"));
+		config.close();
+		config.close();
+		assertEquals(Charset.forName("UTF-8"), config.getCharset());
+		try {
+			config.getValue("", "global");
+			fail("Read after close");
+		} catch (IllegalStateException e) {
+			assertEquals("Mapped file is closed", e.getMessage());
+		}
+
+		// the file can be replaced once it is unmapped
+		write("UTF-8", false, "global=2\n");
+		try (MappedConfigFile replaced = new MappedConfigFile(file)) {
+			assertEquals("2", replaced.getValue("", "global"));
+		}
+	}
+
+	public void testSameAsJConfigFile() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			sb.append("[section ").append(i).append("]\n");
+			for (int j = 0; j < 5; j++) {
+				sb.append("key").append(j).append("=value ").append(i * j).append('\n');
+			}
+		}
+		write("UTF-8", false, sb.toString());
+		MappedConfigFile mapped = new MappedConfigFile(file);
+		JConfigFile config = new JConfigFile(file);
+		assertEquals(config.getSections(), mapped.getSections());
+		for (String section : config.getSections()) {
+			assertEquals(config.getKeys(section), mapped.getKeys(section));
+			for (String key : config.getKeys(section)) {
+				assertEquals(config.getValue(section, key), mapped.getValue(section, key));
+			}
+		}
+	}
+
+	public void testDuplicates() throws IOException {
+		write("UTF-8", false, "[a]\nx=1\n[A]\n");
+		try {
+			new MappedConfigFile(file);
+			fail("Duplicate section not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Duplicate section 'A'", e.getMessage());
+		}
+		write("UTF-8", false, "[a]\nx=1\nX=2\n");
+		try {
+			new MappedConfigFile(file);
+			fail("Duplicate key not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Duplicate key 'X' in section 'a'", e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import nl.arudos.jconfigfile.ConfigMetricsListener.Counter;
+import nl.arudos.jconfigfile.ConfigMetricsListener.Phase;
+
+/**
+ * Unit tests for the timings and counters of a file
+ */
+public class MetricsTest extends TestCase {
+	private File file;
+	private JConfigFile config;
+	private ConfigMetrics metrics;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("metrics", ".ini");
+		LookupTest.write(file, "[a]\nx=1\ny=${[a]:x}\nz=${!-1-!}/${!-1-!}\n");
+		metrics = new ConfigMetrics();
+		JConfigFile.setDefaultMetricsListener(metrics);
+		try {
+			config = new JConfigFile(file);
+		} finally {
+			JConfigFile.setDefaultMetricsListener(null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testLoadAndSave() throws IOException {
+		// the initial load is measured
+		assertSame(metrics, config.getMetricsListener());
+		assertEquals(4, metrics.getLinesParsed());
+		assertEquals(1, metrics.getSubstitutionPasses());
+		assertEquals(1, metrics.getScriptEvaluations());
+		assertEquals(0.5, metrics.getScriptCacheHitRate());
+		assertTrue(metrics.getNanos(Phase.READ) > 0);
+		assertTrue(metrics.getNanos(Phase.PARSE) >= metrics.getNanos(Phase.RESOLVE));
+
+		config.setItem("a", "x", "2");
+		assertEquals(1, metrics.getSaves());
+		assertEquals(file.length(), metrics.getBytesWritten());
+		assertTrue(metrics.getNanos(Phase.SAVE) > 0);
+	}
+
+	public void testLookups() {
+		metrics.reset();
+		ConfigKey<Integer> key = config.bindInt("a", "x", 0);
+		assertEquals("1", config.getValue("a", "y"));
+		assertEquals(1, config.getInt("a", "x", 0));
+		assertEquals(Integer.valueOf(1), key.get());
+		assertEquals(Integer.valueOf(1), key.get());
+		assertEquals(4, metrics.getLookups());
+		assertEquals(0.5, metrics.getKeyCacheHitRate());
+
+		metrics.reset();
+		assertEquals(0, metrics.getCount(Counter.LOOKUPS));
+
+		config.setMetricsListener(null);
+		config.getValue("a", "x");
+		assertEquals(0, metrics.getLookups());
+	}
+
+	public void testLazySection() throws IOException {
+		LookupTest.write(file, "[a]\nx=1\n[b]\ny=${[a]:x}\n");
+		JConfigFile lazy = new JConfigFile(file, null, true);
+		lazy.setMetricsListener(metrics);
+		metrics.reset();
+		assertTrue(lazy.hasSection("b"));
+		assertTrue(lazy.hasKey("b", "y"));
+		assertEquals(1, lazy.getKeys("a").size());
+		assertEquals(3, metrics.getLookups());
+		assertEquals(2, metrics.getLinesParsed());
+		assertTrue(metrics.getNanos(Phase.PARSE) > 0);
+	}
+
+	public void testMBean() throws Exception {
+		metrics.reset();
+		ObjectName name = metrics.register("metrics-test");
+		try {
+			config.getValue("a", "x");
+			assertEquals(Long.valueOf(1),
+					ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Lookups"));
+		} finally {
+			ConfigMetrics.unregister(name);
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+
+}
@@ -0,0 +1,111 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the ${...} value replacements
+ */
+public class PlaceholderTest extends TestCase {
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("placeholder", ".ini");
+		System.setProperty("jconfigfile.test.property", "from property");
+		System.setProperty("jconfigfile.test.key", "target");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		System.clearProperty("jconfigfile.test.property");
+		System.clearProperty("jconfigfile.test.key");
+	}
+
+	private JConfigFile load(String content) throws IOException {
+		LookupTest.write(file, content);
+		return new JConfigFile(file);
+	}
+
+	public void testReferences() throws IOException {
+		JConfigFile config = load("[a]\nx=${[b]:y}/x\n[b]\ny=${[c]:z}/y\n[c]\nz=root\n");
+		assertEquals("root/y/x", config.getValue("a", "x"));
+		assertEquals("root/y", config.getValue("b", "y"));
+	}
+
+	public void testMultiplePlaceholders() throws IOException {
+		JConfigFile config = load("[s]\na=1\nb=2\nsum=${[s]:a}+${[s]:b}=${jconfigfile.test.property}\n");
+		assertEquals("1+2=from property", config.getValue("s", "sum"));
+	}
+
+	public void testLongChain() throws IOException {
+		StringBuilder sb = new StringBuilder("[chain]\nkey0=end\n");
+		for (int i = 1; i < 500; i++) {
+			sb.append("key").append(i).append("=${[chain]:key").append(i - 1).append("}\n");
+		}
+		JConfigFile config = load(sb.toString());
+		assertEquals("end", config.getValue("chain", "key499"));
+	}
+
+	public void testNestedPlaceholder() throws IOException {
+		JConfigFile config = load("[s]\ntarget=found\nvalue=${[s]:${jconfigfile.test.key}}\n");
+		assertEquals("found", config.getValue("s", "value"));
+	}
+
+	public void testUnresolved() throws IOException {
+		JConfigFile config = load("[s]\nvalue=${jconfigfile.test.missing} and ${}\nopen=${unterminated\n");
+		assertEquals("${jconfigfile.test.missing} and ${}", config.getValue("s", "value"));
+		assertEquals("${unterminated", config.getValue("s", "open"));
+	}
+
+	public void testCircularReference() throws IOException {
+		try {
+			load("[a]\nx=${[b]:y}\n[b]\ny=${[a]:x}\n");
+			fail("Circular reference not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Circular reference [a]:x -> [b]:y -> [a]:x", e.getMessage());
+		}
+	}
+
+	public void testScript() throws IOException {
+		JConfigFile config = load("[s]\na=${!-1+1-!}\nb=${!-1+1-!}\n");
+		String result = config.getValue("s", "a");
+		if (!result.startsWith("##EXCEPTION: No JavaScript engine")) {
+			assertEquals("2", result);
+		}
+		assertEquals(result, config.getValue("s", "b"));
+	}
+
+	public void testScriptPurity() {
+		assertTrue(ScriptEvaluator.isPure("1+1"));
+		assertTrue(ScriptEvaluator.isPure("Math.max(1, 2.5e3) * -0x1F"));
+		assertTrue(ScriptEvaluator.isPure("'new Date()' + \"Math.random()\""));
+		assertTrue(ScriptEvaluator.isPure("1 > 2 ? 'a' : 'b'"));
+		assertFalse(ScriptEvaluator.isPure("-Math.random()"));
+		assertFalse(ScriptEvaluator.isPure("new Date().getTime()"));
+		assertFalse(ScriptEvaluator.isPure("this['Ma'+'th'].random()"));
+		assertFalse(ScriptEvaluator.isPure("globalThis.Math.max(1)"));
+		assertFalse(ScriptEvaluator.isPure("performance.now()"));
+		assertFalse(ScriptEvaluator.isPure("m = Math, m.random()"));
+		assertFalse(ScriptEvaluator.isPure("`${1}`"));
+	}
+
+	public void testScriptTags() throws IOException {
+		try {
+			load("[s]\nvalue=${!-1+1}\n");
+			fail("Missing end tag not detected");
+		} catch (RuntimeException e) {
+			assertEquals("JavaScript end tag '-!' not found", e.getMessage());
+		}
+		try {
+			load("[s]\nvalue=${1+1-!}\n");
+			fail("Missing start tag not detected");
+		} catch (RuntimeException e) {
+			assertEquals("JavaScript start tag '!-' not found", e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the sources of placeholder values
+ */
+public class PropertySourceTest extends TestCase {
+	private File file;
+	private Map<String, String> secrets;
+	private AtomicInteger lookups;
+	private PropertySource counting;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("properties", ".ini");
+		LookupTest.write(file, "[db]\npassword=${db.password}\nhome=${java.home}\nunknown=${no.such.property}\n");
+		secrets = new HashMap<String, String>();
+		secrets.put("db.password", "secret");
+		lookups = new AtomicInteger();
+		counting = name -> {
+			lookups.incrementAndGet();
+			return secrets.get(name);
+		};
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testChain() throws IOException {
+		JConfigFile config = new JConfigFile(file);
+		assertEquals("${db.password}", config.getValue("db", "password"));
+
+		config.setPropertySource(PropertySource.chain(PropertySource.of(secrets), PropertySource.defaults()));
+		config.load();
+		assertEquals("secret", config.getValue("db", "password"));
+		assertEquals(System.getProperty("java.home"), config.getValue("db", "home"));
+		assertEquals("${no.such.property}", config.getValue("db", "unknown"));
+	}
+
+	public void testConstructor() throws IOException {
+		JConfigFile config = new JConfigFile(file, null, PropertySource.of(secrets));
+		assertEquals("secret", config.getValue("db", "password"));
+		assertEquals("${java.home}", config.getValue("db", "home"));
+	}
+
+	public void testIncrementalReload() throws IOException {
+		System.setProperty("incremental.probe", "old");
+		try {
+			LookupTest.write(file, "[a]\nprobe=${incremental.probe}\n[b]\ncopy=${[a]:probe}\nplain=1\n");
+			JConfigFile config = new JConfigFile(file);
+			config.setIncrementalReload(true);
+			assertEquals("old", config.getValue("b", "copy"));
+
+			System.setProperty("incremental.probe", "new");
+			config.load();
+			assertEquals("new", config.getValue("a", "probe"));
+			assertEquals("new", config.getValue("b", "copy"));
+
+			secrets.put("incremental.probe", "fromSource");
+			CachedPropertySource cached = new CachedPropertySource(
+					PropertySource.chain(PropertySource.of(secrets), PropertySource.defaults()));
+			config.setPropertySource(cached);
+			config.load();
+			assertEquals("fromSource", config.getValue("b", "copy"));
+
+			secrets.put("incremental.probe", "refreshed");
+			config.load();
+			assertEquals("fromSource", config.getValue("b", "copy"));
+			cached.refresh();
+			config.load();
+			assertEquals("refreshed", config.getValue("b", "copy"));
+		} finally {
+			System.clearProperty("incremental.probe");
+		}
+	}
+
+	public void testCache() throws IOException {
+		CachedPropertySource cached = new CachedPropertySource(counting);
+		JConfigFile config = new JConfigFile(file);
+		config.setPropertySource(cached);
+		config.load();
+		assertEquals(3, lookups.get());
+		config.load();
+		assertEquals(3, lookups.get());
+
+		// missing properties are remembered as well
+		secrets.put("no.such.property", "found");
+		config.load();
+		assertEquals("${no.such.property}", config.getValue("db", "unknown"));
+
+		cached.refresh("no.such.property");
+		config.load();
+		assertEquals("found", config.getValue("db", "unknown"));
+		assertEquals(4, lookups.get());
+
+		cached.refresh();
+		config.load();
+		assertEquals(7, lookups.get());
+	}
+
+	public void testTimeToLive() throws InterruptedException {
+		CachedPropertySource cached = new CachedPropertySource(counting, 10, TimeUnit.MILLISECONDS);
+		assertEquals("secret", cached.getProperty("db.password"));
+		assertEquals("secret", cached.getProperty("db.password"));
+		assertEquals(1, lookups.get());
+		Thread.sleep(50);
+		assertEquals("secret", cached.getProperty("db.password"));
+		assertEquals(2, lookups.get());
+	}
+
+	public void testFromFile() throws IOException {
+		File properties = File.createTempFile("secrets", ".properties");
+		try {
+			LookupTest.write(properties, "# secrets\ndb.password = from file\n");
+			JConfigFile config = new JConfigFile(file);
+			config.setPropertySource(PropertySource.fromFile(properties));
+			config.load();
+			assertEquals("from file", config.getValue("db", "password"));
+			assertEquals("${java.home}", config.getValue("db", "home"));
+		} finally {
+			properties.delete();
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for loading a set of files that refer to each other
+ */
+public class RegistryTest extends TestCase {
+	private File base;
+	private File env;
+	private File host;
+	private Map<String, File> files;
+
+	@Override
+	protected void setUp() throws Exception {
+		base = File.createTempFile("base", ".ini");
+		env = File.createTempFile("env", ".ini");
+		host = File.createTempFile("host", ".ini");
+		LookupTest.write(base, "[db]\nurl=jdbc://${env:[db]:host}/${[db]:name}\nname=app\n");
+		LookupTest.write(env, "[db]\nhost=${host:[net]:name}:5432\n");
+		LookupTest.write(host, "[net]\nname=db01\nmissing=${other:[net]:name}\n");
+		files = new LinkedHashMap<String, File>();
+		files.put("base", base);
+		files.put("env", env);
+		files.put("host", host);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		base.delete();
+		env.delete();
+		host.delete();
+	}
+
+	public void testCrossFileReferences() throws IOException {
+		ConfigRegistry registry = ConfigRegistry.load(files);
+		assertEquals(Arrays.asList("base", "env", "host"), new ArrayList<String>(registry.getNames()));
+		assertEquals(3, registry.getFiles().size());
+		assertEquals("jdbc://db01:5432/app", registry.get("base").getValue("db", "url"));
+		assertEquals("db01:5432", registry.get("env").getValue("db", "host"));
+		assertEquals("${other:[net]:name}", registry.get("host").getValue("net", "missing"));
+		assertNull(registry.get("other"));
+	}
+
+	public void testSuppliedExecutorAndReload() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ConfigRegistry registry = ConfigRegistry.load(files, "UTF-8", executor);
+			assertEquals("jdbc://db01:5432/app", registry.get("base").getValue("db", "url"));
+
+			// a reload of the referring file resolves the references again
+			LookupTest.write(host, "[net]\nname=db02\n");
+			registry.get("host").load();
+			registry.get("env").load();
+			registry.get("base").load();
+			assertEquals("jdbc://db02:5432/app", registry.get("base").getValue("db", "url"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testPublishedSnapshotUnchanged() throws IOException {
+		LookupTest.write(host, "[net]\nother=db03\n");
+		ConfigRegistry registry = ConfigRegistry.load(files);
+		JConfigFile envFile = registry.get("env");
+		assertEquals("${host:[net]:name}:5432", envFile.getValue("db", "host"));
+
+		registry.get("host").setItem("net", "name", "db04");
+		ConfigData published = envFile.current();
+		assertTrue(envFile.resolveRegistryReferences());
+		assertEquals("${host:[net]:name}:5432", published.getValue("db", "host"));
+		assertEquals("db04:5432", envFile.getValue("db", "host"));
+	}
+
+	public void testLoadErrors() throws IOException {
+		files.put("gone", new File(base.getPath() + ".missing"));
+		try {
+			ConfigRegistry.load(files);
+			fail("Missing file not reported");
+		} catch (IOException e) {
+			// expected
+		}
+
+		files.remove("gone");
+		files.put("a:b", base);
+		try {
+			ConfigRegistry.load(files);
+			fail("Invalid name not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Name 'a:b' must not contain ':' or '['", e.getMessage());
+		}
+	}
+
+}
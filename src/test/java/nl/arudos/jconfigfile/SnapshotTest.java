@@ -0,0 +1,102 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for binary snapshots of a file
+ */
+public class SnapshotTest extends TestCase {
+	private static final String CONTENT = "; settings\nglobal=1\n[a]\nx=${[b]:y}/x ; comment\nz=${[a]:x}/z\n\n[b]\ny=old\nflag\n";
+
+	private File file;
+	private File snapshotFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("snapshot", ".ini");
+		LookupTest.write(file, CONTENT);
+		snapshotFile = new JConfigFile(file).compileSnapshot();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		snapshotFile.delete();
+	}
+
+	private ConfigData readSnapshot() throws IOException {
+		ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		return ConfigSnapshot.read(file, bytes, JConfigFile.detectCharset(bytes, null));
+	}
+
+	public void testLoadFromSnapshot() throws IOException {
+		assertEquals(file.getPath() + ".snapshot", snapshotFile.getPath());
+		ConfigData snapshot = readSnapshot();
+		assertNotNull(snapshot);
+		assertEquals("old/x", snapshot.findKey("a", "x").getValue());
+		assertEquals("x=${[b]:y}/x ; comment", snapshot.findKey("a", "x").getRawLine());
+
+		JConfigFile config = new JConfigFile(file);
+		assertEquals("1", config.getValue("", "global"));
+		assertEquals("old/x/z", config.getValue("a", "z"));
+		assertNull(config.getValue("b", "flag"));
+		assertTrue(config.hasKey("B", "FLAG"));
+		assertEquals(2, config.getKeys("b").size());
+
+		// the file is saved the same as after parsing it
+		config.setItem("b", "y", "new");
+		assertEquals("; settings\nglobal=1\n[a]\nx=old/x ; comment\nz=old/x/z\n\n[b]\ny=new\nflag\n",
+				new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+	}
+
+	public void testChangedFileIgnoresSnapshot() throws IOException {
+		LookupTest.write(file, CONTENT.replace("y=old", "y=new"));
+		assertNull(readSnapshot());
+		assertEquals("new/x/z", new JConfigFile(file).getValue("a", "z"));
+
+		new JConfigFile(file).compileSnapshot();
+		assertNotNull(readSnapshot());
+	}
+
+	public void testLazyLoadingIgnoresSnapshot() throws IOException {
+		assertNotNull(readSnapshot());
+		JConfigFile config = new JConfigFile(file, null, true);
+		assertFalse(config.current().isParsed("a"));
+		assertEquals("old/x/z", config.getValue("a", "z"));
+	}
+
+	public void testPropertiesResolvedOnLoad() throws IOException {
+		System.setProperty("snapshot.probe.host", "old.example.com");
+		try {
+			LookupTest.write(file, "[a]\nhost=${snapshot.probe.host}\nurl=http://${[a]:host}/\nport=80\n");
+			new JConfigFile(file).compileSnapshot();
+			ConfigData snapshot = readSnapshot();
+			assertNotNull(snapshot);
+			assertEquals("${snapshot.probe.host}", snapshot.findKey("a", "host").getValue());
+			assertEquals("http://${[a]:host}/", snapshot.findKey("a", "url").getValue());
+
+			System.setProperty("snapshot.probe.host", "new.example.com");
+			JConfigFile config = new JConfigFile(file);
+			assertEquals("new.example.com", config.getValue("a", "host"));
+			assertEquals("http://new.example.com/", config.getValue("a", "url"));
+			assertEquals("80", config.getValue("a", "port"));
+		} finally {
+			System.clearProperty("snapshot.probe.host");
+		}
+	}
+
+	public void testCorruptSnapshotIgnored() throws IOException {
+		byte[] bytes = Files.readAllBytes(snapshotFile.toPath());
+		bytes[bytes.length / 2] ^= 0x55;
+		Files.write(snapshotFile.toPath(), bytes);
+		snapshotFile.setLastModified(file.lastModified() + 1000);
+		assertNull(readSnapshot());
+		assertEquals("old/x/z", new JConfigFile(file).getValue("a", "z"));
+	}
+
+}
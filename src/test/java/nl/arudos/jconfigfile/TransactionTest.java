@@ -0,0 +1,144 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for batches of changes and removing keys and sections
+ */
+public class TransactionTest extends TestCase {
+	private static final String CONTENT = "global=1\n[a]\nx=1\n; about y\ny=2\n[b]\nz=3\n";
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("transaction", ".ini");
+		LookupTest.write(file, CONTENT);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private String content() throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+	}
+
+	public void testCommit() throws IOException {
+		JConfigFile config = new JConfigFile(file);
+		config.beginTransaction();
+		assertTrue(config.inTransaction());
+		for (int i = 0; i < 100; i++) {
+			config.setItem("generated", "key" + i, "value" + i);
+		}
+		config.setItem("a", "x", "changed");
+		assertEquals("value99", config.getValue("generated", "key99"));
+		assertEquals(CONTENT, content());
+
+		config.commit();
+		assertFalse(config.inTransaction());
+		JConfigFile reloaded = new JConfigFile(file);
+		assertEquals("value99", reloaded.getValue("generated", "key99"));
+		assertEquals("changed", reloaded.getValue("a", "x"));
+	}
+
+	public void testRollback() throws IOException {
+		JConfigFile config = new JConfigFile(file);
+		config.beginTransaction();
+		config.setItem("a", "x", "changed");
+		config.removeSection("b");
+		config.rollback();
+		assertEquals("1", config.getValue("a", "x"));
+		assertTrue(config.hasSection("b"));
+		assertEquals(CONTENT, content());
+	}
+
+	public void testTransactionState() throws IOException {
+		JConfigFile config = new JConfigFile(file);
+		try {
+			config.commit();
+			fail("Commit without transaction");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		config.beginTransaction();
+		try {
+			config.beginTransaction();
+			fail("Nested transaction");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	public void testRemoveItem() throws IOException {
+		JConfigFile config = new JConfigFile(file);
+		assertTrue(config.removeItem("A", "Y"));
+		assertFalse(config.removeItem("a", "y"));
+		assertFalse(config.hasKey("a", "y"));
+		assertEquals("global=1\n[a]\nx=1\n; about y\n[b]\nz=3\n", content());
+	}
+
+	public void testRemoveSection() throws IOException {
+		JConfigFile config = new JConfigFile(file);
+		assertFalse(config.removeSection(""));
+		assertTrue(config.removeSection("a"));
+		assertFalse(config.hasSection("a"));
+		assertEquals("global=1\n[b]\nz=3\n", content());
+		assertTrue(config.setItem("a", "x", "new"));
+		assertEquals("global=1\n[b]\nz=3\n[a]\nx=new\n", content());
+	}
+
+	public void testRemoveSectionKeepsComments() throws IOException {
+		String content = "[a]\nx=1\n; about x\n\n; about b\n[b]\nz=3\n; trailing\n";
+		for (boolean lazy : new boolean[] { false, true }) {
+			LookupTest.write(file, content);
+			JConfigFile config = new JConfigFile(file, "UTF-8", lazy);
+			assertTrue(config.removeSection("a"));
+			assertEquals("; about b\n[b]\nz=3\n; trailing\n", content());
+			assertTrue(config.removeSection("b"));
+			assertEquals("; about b\n", content());
+		}
+	}
+
+	public void testFailedSaveNotPublished() throws IOException {
+		JConfigFile config = new JConfigFile(file);
+		final List<ConfigChangeEvent> events = new ArrayList<ConfigChangeEvent>();
+		config.addChangeListener(events::add);
+
+		// a directory that is not empty can not be replaced by the save
+		File blocker = new File(file, "blocker");
+		assertTrue(file.delete() && file.mkdir() && blocker.createNewFile());
+		try {
+			try {
+				config.setItem("a", "x", "changed");
+				fail("Failed save not reported");
+			} catch (IOException e) {
+				// expected
+			}
+			assertEquals("1", config.getValue("a", "x"));
+
+			config.beginTransaction();
+			config.setItem("a", "x", "batch");
+			try {
+				config.commit();
+				fail("Failed commit not reported");
+			} catch (IOException e) {
+				// expected
+			}
+			assertFalse(config.inTransaction());
+			assertEquals("1", config.getValue("a", "x"));
+			assertTrue(events.isEmpty());
+		} finally {
+			blocker.delete();
+			file.delete();
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the typed getters
+ */
+public class TypedValueTest extends TestCase {
+	private File file;
+	private JConfigFile config;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("typed", ".ini");
+		LookupTest.write(file, "[s]\nint= 42 \nlong=9000000000\nyes=Yes\noff=OFF\ntimeout=90s\niso=PT1M30S\n"
+				+ "plain=250\nlist=a, b ,c\nempty=\nbad=forty-two ; comment\n");
+		config = new JConfigFile(file);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testConversions() {
+		assertEquals(42, config.getInt("s", "int", 0));
+		assertEquals(9000000000L, config.getLong("s", "long", 0));
+		assertTrue(config.getBoolean("s", "yes", false));
+		assertFalse(config.getBoolean("s", "off", true));
+		assertEquals(Duration.ofSeconds(90), config.getDuration("s", "timeout", null));
+		assertEquals(Duration.ofSeconds(90), config.getDuration("s", "iso", null));
+		assertEquals(Duration.ofMillis(250), config.getDuration("s", "plain", null));
+		assertEquals(Arrays.asList("a", "b", "c"), config.getList("s", "list", null));
+	}
+
+	public void testDefaults() {
+		assertEquals(7, config.getInt("s", "missing", 7));
+		assertEquals(7, config.getInt("missing", "int", 7));
+		assertEquals(7L, config.getLong("s", "empty", 7L));
+		assertTrue(config.getBoolean("s", "empty", true));
+		assertEquals(Duration.ZERO, config.getDuration("s", "missing", Duration.ZERO));
+		List<String> none = Collections.emptyList();
+		assertSame(none, config.getList("s", "empty", none));
+	}
+
+	public void testInvalidValue() {
+		try {
+			config.getInt("s", "bad", 0);
+			fail("Invalid value not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Value 'forty-two' of key 'bad' in section 's' is not a valid integer", e.getMessage());
+		}
+		try {
+			config.getBoolean("s", "int", false);
+			fail("Invalid value not detected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Value '42' of key 'int' in section 's' is not a valid boolean", e.getMessage());
+		}
+	}
+
+	public void testCachedUntilChanged() throws IOException {
+		List<String> list = config.getList("s", "list", null);
+		assertSame(list, config.getList("s", "list", null));
+
+		config.setItem("s", "list", "x,y");
+		assertEquals(Arrays.asList("x", "y"), config.getList("s", "list", null));
+		config.setItem("s", "int", "43");
+		assertEquals(43, config.getInt("s", "int", 0));
+	}
+
+	public void testCachedPerType() {
+		List<String> list = config.getList("s", "int", null);
+		Duration duration = config.getDuration("s", "plain", null);
+		assertEquals(42, config.getInt("s", "int", 0));
+		assertSame(list, config.getList("s", "int", null));
+		assertEquals(250, config.getLong("s", "plain", 0));
+		assertSame(duration, config.getDuration("s", "plain", null));
+	}
+
+	public void testCachedWhenResolvedLazily() throws IOException {
+		LookupTest.write(file, "[s]\nbase=a,b\nlist=${[s]:base},c\n");
+		JConfigFile lazy = new JConfigFile(file, null, false, true);
+		List<String> list = lazy.getList("s", "list", null);
+		assertEquals(Arrays.asList("a", "b", "c"), list);
+		assertSame(list, lazy.getList("s", "list", null));
+
+		lazy.setItem("s", "base", "x");
+		assertEquals(Arrays.asList("x", "c"), lazy.getList("s", "list", null));
+	}
+
+}
@@ -0,0 +1,127 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for change listeners and reloading changed files
+ */
+public class WatchTest extends TestCase {
+	private File file;
+	private JConfigFile config;
+	private final BlockingQueue<ConfigChangeEvent> events = new LinkedBlockingQueue<ConfigChangeEvent>();
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("watch", ".ini");
+		LookupTest.write(file, "[s]\nsame=1\nchanged=old\nremoved=x\n");
+		config = new JConfigFile(file);
+		config.addChangeListener(new ConfigChangeListener() {
+			@Override
+			public void configChanged(ConfigChangeEvent event) {
+				events.add(event);
+			}
+		});
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		config.stopWatching();
+		file.delete();
+	}
+
+	private void assertReloaded() throws Exception {
+		LookupTest.write(file, "[s]\nsame=1\nchanged=new\nadded=y\n");
+		ConfigChangeEvent event = events.poll(10, TimeUnit.SECONDS);
+		assertNotNull("File change not detected", event);
+		assertEquals(1, event.getAdded().size());
+		assertEquals("added", event.getAdded().get(0).getKey());
+		assertEquals(1, event.getChanged().size());
+		assertEquals("old", event.getChanged().get(0).getOldValue());
+		assertEquals("new", event.getChanged().get(0).getNewValue());
+		assertEquals(1, event.getRemoved().size());
+		assertEquals("removed", event.getRemoved().get(0).getKey());
+		assertEquals("new", config.getValue("s", "changed"));
+	}
+
+	public void testWatching() throws Exception {
+		config.startWatching(50);
+		assertTrue(config.isWatching());
+		assertReloaded();
+	}
+
+	public void testPolling() throws Exception {
+		config.startPolling(50);
+		assertReloaded();
+	}
+
+	public void testStopWatching() throws Exception {
+		config.startWatching(50);
+		config.stopWatching();
+		assertFalse(config.isWatching());
+		LookupTest.write(file, "[s]\nsame=2\n");
+		assertNull(events.poll(500, TimeUnit.MILLISECONDS));
+		assertEquals("1", config.getValue("s", "same"));
+	}
+
+	public void testSetItemNotifies() throws Exception {
+		config.startWatching(50);
+		config.setItem("s", "same", "2");
+		ConfigChangeEvent event = events.poll(1, TimeUnit.SECONDS);
+		assertEquals("2", event.getChanged().get(0).getNewValue());
+
+		// saving the file must not cause a reload of the same content
+		assertNull(events.poll(500, TimeUnit.MILLISECONDS));
+	}
+
+	public void testOwnSaveNotReloaded() throws Exception {
+		final AtomicInteger reads = new AtomicInteger();
+		config.setMetricsListener(new ConfigMetricsListener() {
+			@Override
+			public void timing(Phase phase, long nanos) {
+				if (phase == Phase.READ) {
+					reads.incrementAndGet();
+				}
+			}
+		});
+		config.startWatching(50);
+		config.setItem("s", "removed", "y");
+		Thread.sleep(500);
+		assertEquals(0, reads.get());
+
+		// a change that is not a save is still reloaded
+		events.clear();
+		assertReloaded();
+		assertTrue(reads.get() > 0);
+	}
+
+	public void testListenerDoesNotBlockChanges() throws Exception {
+		config.addChangeListener(event -> {
+			if (!"same".equals(event.getChanged().get(0).getKey())) {
+				return;
+			}
+			// another thread can change the file while the listener runs
+			Thread other = new Thread(() -> {
+				try {
+					config.setItem("s", "changed", "from listener");
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+			other.start();
+			try {
+				other.join(5000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		config.setItem("s", "same", "2");
+		assertEquals("from listener", config.getValue("s", "changed"));
+	}
+
+}
@@ -0,0 +1,105 @@
+package nl.arudos.jconfigfile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for saving a file in the background
+ */
+public class WriteBehindTest extends TestCase {
+	private File file;
+	private JConfigFile config;
+	private ConfigMetrics metrics;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("behind", ".ini");
+		LookupTest.write(file, "[counters]\nhits=0\n");
+		config = new JConfigFile(file);
+		metrics = new ConfigMetrics();
+		config.setMetricsListener(metrics);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		config.stopWriteBehind();
+		file.delete();
+	}
+
+	public void testCoalescedSave() throws Exception {
+		config.startWriteBehind(60000);
+		assertTrue(config.isWriteBehind());
+		for (int i = 1; i <= 100; i++) {
+			config.setItem("counters", "hits", String.valueOf(i));
+		}
+		assertEquals("100", config.getValue("counters", "hits"));
+		assertEquals(0, metrics.getSaves());
+
+		config.flush().get(5, TimeUnit.SECONDS);
+		assertEquals(1, metrics.getSaves());
+		assertEquals("100", new JConfigFile(file).getValue("counters", "hits"));
+
+		// nothing changed since the last save
+		assertTrue(config.flush().isDone());
+		assertEquals(1, metrics.getSaves());
+	}
+
+	public void testConcurrentChanges() throws Exception {
+		config.startWriteBehind(50);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final String key = "thread." + t;
+			Thread thread = new Thread(() -> {
+				try {
+					for (int i = 0; i < 50; i++) {
+						config.setItem("counters", key, String.valueOf(i));
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		config.flush().get(5, TimeUnit.SECONDS);
+		assertTrue(metrics.getSaves() < 200);
+		JConfigFile saved = new JConfigFile(file);
+		for (int t = 0; t < 4; t++) {
+			assertEquals("49", saved.getValue("counters", "thread." + t));
+		}
+	}
+
+	public void testLoadSavesPendingChanges() throws Exception {
+		config.startWriteBehind(60000);
+		config.setItem("counters", "hits", "2");
+		config.flush().get(5, TimeUnit.SECONDS);
+		config.setItem("counters", "hits", "3");
+
+		config.load();
+		assertEquals("3", config.getValue("counters", "hits"));
+		config.flush().get(5, TimeUnit.SECONDS);
+		assertEquals("3", new JConfigFile(file).getValue("counters", "hits"));
+	}
+
+	public void testStopSavesPendingChanges() throws Exception {
+		config.startWriteBehind(60000);
+		config.setItem("counters", "hits", "7");
+		config.stopWriteBehind();
+		assertFalse(config.isWriteBehind());
+		assertEquals("7", new JConfigFile(file).getValue("counters", "hits"));
+
+		CompletableFuture<Void> flushed = config.flush();
+		assertTrue(flushed.isDone());
+		config.setItem("counters", "hits", "8");
+		assertEquals("8", new JConfigFile(file).getValue("counters", "hits"));
+	}
+
+}